@@ -0,0 +1,71 @@
+package fr.pickaria.pterodactylpoweraction;
+
+import com.velocitypowered.api.event.player.ServerPreConnectEvent;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Players connecting to running servers, the decision being made from the reachability cache.
+ * Each benchmark thread plays a share of the players, run with {@code -t} to change the number of concurrent players.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+public class ConnectionListenerBenchmark {
+    @State(Scope.Benchmark)
+    public static class Plugin {
+        @Param({"10", "100"})
+        public int serverCount;
+
+        public PluginFixture fixture;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            fixture = new PluginFixture(serverCount);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() {
+            fixture.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Players {
+        @Param({"1", "128"})
+        public int playersPerThread;
+
+        public Player[] players;
+        private int next = 0;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            players = new Player[playersPerThread];
+            for (int i = 0; i < playersPerThread; i++) {
+                players[i] = Fakes.player(UUID.randomUUID());
+            }
+        }
+    }
+
+    @Benchmark
+    public Object onServerPreConnect(Plugin plugin, Players players) {
+        int next = players.next++;
+        Player player = players.players[next % players.players.length];
+        RegisteredServer server = plugin.fixture.servers.get(next % plugin.fixture.servers.size());
+        return plugin.fixture.connectionListener.onServerPreConnect(new ServerPreConnectEvent(player, server));
+    }
+}
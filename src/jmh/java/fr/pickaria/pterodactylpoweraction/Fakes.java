@@ -0,0 +1,111 @@
+package fr.pickaria.pterodactylpoweraction;
+
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.proxy.server.ServerInfo;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * In-memory stand-ins for the Velocity interfaces, built as dynamic proxies so that they only implement what the
+ * plugin calls. Other methods return an empty value of their return type.
+ */
+public final class Fakes {
+    private Fakes() {
+    }
+
+    /**
+     * @param servers The servers known to the proxy, by name
+     */
+    public static ProxyServer proxyServer(Map<String, RegisteredServer> servers) {
+        return fake(ProxyServer.class, Map.of(
+                "getServer", args -> Optional.ofNullable(servers.get((String) args[0])),
+                "getAllServers", args -> List.copyOf(servers.values())
+        ));
+    }
+
+    /**
+     * A server answering every ping right away, without players.
+     */
+    public static RegisteredServer registeredServer(String name) {
+        return registeredServer(name, List::of);
+    }
+
+    /**
+     * A server answering every ping right away.
+     *
+     * @param players Supplies the players currently connected to the server
+     */
+    public static RegisteredServer registeredServer(String name, Supplier<Collection<Player>> players) {
+        ServerInfo serverInfo = new ServerInfo(name, InetSocketAddress.createUnresolved("localhost", 25565));
+        return fake(RegisteredServer.class, Map.of(
+                "getServerInfo", args -> serverInfo,
+                "getPlayersConnected", args -> players.get(),
+                "ping", args -> CompletableFuture.completedFuture(null)
+        ));
+    }
+
+    public static Player player(UUID uniqueId) {
+        String username = "player-" + uniqueId.toString().substring(0, 8);
+        return fake(Player.class, Map.of(
+                "getUniqueId", args -> uniqueId,
+                "getUsername", args -> username,
+                "isActive", args -> true
+        ));
+    }
+
+    /**
+     * @param answers The result of each method, by name, given the arguments of the call
+     */
+    public static <T> T fake(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+        InvocationHandler handler = (proxy, method, args) -> {
+            Function<Object[], Object> answer = answers.get(method.getName());
+            if (answer != null) {
+                return answer.apply(args);
+            }
+            if (method.isDefault()) {
+                return InvocationHandler.invokeDefault(proxy, method, args);
+            }
+            return switch (method.getName()) {
+                case "equals" -> proxy == args[0];
+                case "hashCode" -> System.identityHashCode(proxy);
+                case "toString" -> type.getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(proxy));
+                default -> getEmptyValue(method);
+            };
+        };
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+    }
+
+    private static Object getEmptyValue(Method method) {
+        Class<?> returnType = method.getReturnType();
+        if (returnType == boolean.class) {
+            return false;
+        } else if (returnType == int.class) {
+            return 0;
+        } else if (returnType == long.class) {
+            return 0L;
+        } else if (returnType == Optional.class) {
+            return Optional.empty();
+        } else if (returnType == Set.class) {
+            return Set.of();
+        } else if (Collection.class.isAssignableFrom(returnType)) {
+            return List.of();
+        } else if (returnType == CompletableFuture.class) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return null;
+    }
+}
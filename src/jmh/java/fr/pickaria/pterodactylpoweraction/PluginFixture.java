@@ -0,0 +1,127 @@
+package fr.pickaria.pterodactylpoweraction;
+
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import fr.pickaria.pterodactylpoweraction.configuration.ConfigurationLoader;
+import fr.pickaria.pterodactylpoweraction.demand.DemandHistory;
+import fr.pickaria.pterodactylpoweraction.demand.LastServerStore;
+import fr.pickaria.pterodactylpoweraction.executor.PluginExecutors;
+import fr.pickaria.pterodactylpoweraction.metrics.Metrics;
+import org.slf4j.Logger;
+import org.slf4j.helpers.NOPLogger;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * The components of the plugin wired together as in {@link PterodactylPowerAction}, on top of a fake proxy and a
+ * configuration written to a temporary directory.
+ */
+public final class PluginFixture implements AutoCloseable {
+    public static final String WAITING_SERVER_NAME = "limbo";
+
+    public final Path dataDirectory;
+    public final List<RegisteredServer> servers = new ArrayList<>();
+    public final ProxyServer proxy;
+    public final ServerRegistry serverRegistry = new ServerRegistry();
+    public final PluginExecutors executors = new PluginExecutors();
+    public final Metrics metrics = new Metrics(serverRegistry, executors);
+    public final ConfigurationLoader configurationLoader;
+    public final ReachabilityCache reachabilityCache;
+    public final PowerActionCoordinator coordinator;
+    public final WarmPoolManager warmPoolManager;
+    public final ShutdownManager shutdownManager;
+    public final PreWarmer preWarmer;
+    public final SpeculativeStarter speculativeStarter;
+    public final ConnectionListener connectionListener;
+
+    /**
+     * Servers using the shell API with commands doing nothing, all of them running and answering pings right away.
+     *
+     * @param serverCount Number of servers besides the waiting server
+     */
+    public PluginFixture(int serverCount) {
+        this(createServers(serverCount), PluginFixture::createShellConfiguration);
+        reachabilityCache.update(proxy.getServer(WAITING_SERVER_NAME).orElseThrow(), true);
+        for (RegisteredServer server : servers) {
+            reachabilityCache.update(server, true);
+        }
+    }
+
+    /**
+     * @param serversByName        The servers known to the proxy, including the waiting server
+     * @param configurationFactory Creates the content of the configuration file from the names of the servers
+     */
+    public PluginFixture(Map<String, RegisteredServer> serversByName, Function<Collection<String>, String> configurationFactory) {
+        Logger logger = NOPLogger.NOP_LOGGER;
+        serversByName.forEach((name, server) -> {
+            if (!name.equals(WAITING_SERVER_NAME)) {
+                servers.add(server);
+            }
+        });
+
+        try {
+            dataDirectory = Files.createTempDirectory("ppa-benchmark");
+            Files.writeString(dataDirectory.resolve("config.yml"), configurationFactory.apply(serversByName.keySet()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+
+        proxy = Fakes.proxyServer(serversByName);
+        configurationLoader = new ConfigurationLoader(logger, dataDirectory, executors, metrics);
+        reachabilityCache = new ReachabilityCache(configurationLoader, serverRegistry, metrics, logger);
+        coordinator = new PowerActionCoordinator(proxy, configurationLoader, reachabilityCache, serverRegistry, metrics, logger);
+        warmPoolManager = new WarmPoolManager(proxy, configurationLoader, coordinator, reachabilityCache, serverRegistry, logger);
+        // The plugin is only used to schedule the tasks, which the benchmarks do not start
+        shutdownManager = new ShutdownManager(proxy, null, configurationLoader, reachabilityCache, serverRegistry, coordinator, warmPoolManager, logger);
+        preWarmer = new PreWarmer(proxy, configurationLoader, shutdownManager, coordinator, reachabilityCache, serverRegistry, new DemandHistory(dataDirectory.resolve("history"), logger), logger);
+        speculativeStarter = new SpeculativeStarter(proxy, configurationLoader, shutdownManager, coordinator, reachabilityCache, serverRegistry, warmPoolManager, new LastServerStore(dataDirectory.resolve("last_servers.bin"), logger), logger);
+        connectionListener = new ConnectionListener(configurationLoader, proxy, logger, shutdownManager, reachabilityCache, serverRegistry, coordinator, preWarmer, speculativeStarter, metrics);
+    }
+
+    @Override
+    public void close() {
+        configurationLoader.close();
+        executors.close();
+        try (Stream<Path> files = Files.walk(dataDirectory)) {
+            files.sorted(Comparator.reverseOrder()).forEach(path -> path.toFile().delete());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static Map<String, RegisteredServer> createServers(int serverCount) {
+        Map<String, RegisteredServer> serversByName = new LinkedHashMap<>();
+        serversByName.put(WAITING_SERVER_NAME, Fakes.registeredServer(WAITING_SERVER_NAME));
+        for (int i = 0; i < serverCount; i++) {
+            serversByName.put("server-" + i, Fakes.registeredServer("server-" + i));
+        }
+        return serversByName;
+    }
+
+    private static String createShellConfiguration(Collection<String> serverNames) {
+        StringBuilder configuration = new StringBuilder()
+                .append("type: \"shell\"\n")
+                .append("ping_method: \"ping\"\n")
+                .append("waiting_server_name: \"").append(WAITING_SERVER_NAME).append("\"\n")
+                .append("start_waiting_server_on_startup: false\n")
+                .append("shutdown_after_duration: 60\n")
+                .append("servers:\n");
+        for (String serverName : serverNames) {
+            configuration.append("  ").append(serverName).append(":\n")
+                    .append("    start: \"true\"\n")
+                    .append("    stop: \"true\"\n");
+        }
+        return configuration.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package fr.pickaria.pterodactylpoweraction;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Idle deadlines set and cancelled as players come and go, as happens on busy servers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ShutdownManagerBenchmark {
+    @Param({"10", "1000"})
+    public int serverCount;
+
+    private PluginFixture fixture;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new PluginFixture(serverCount);
+        for (RegisteredServer server : fixture.servers) {
+            fixture.serverRegistry.advance(server.getServerInfo().getName(), ServerState.RUNNING);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        private int next = 0;
+    }
+
+    @Benchmark
+    public void scheduleThenCancel(Cursor cursor) {
+        RegisteredServer server = fixture.servers.get(cursor.next++ % fixture.servers.size());
+        fixture.shutdownManager.scheduleShutdown(server);
+        fixture.shutdownManager.cancelTask(server);
+    }
+
+    @Benchmark
+    public void reschedule(Cursor cursor) {
+        // A player leaving a server that already has a deadline
+        RegisteredServer server = fixture.servers.get(cursor.next++ % fixture.servers.size());
+        fixture.shutdownManager.scheduleShutdown(server);
+    }
+}
@@ -0,0 +1,57 @@
+package fr.pickaria.pterodactylpoweraction.configuration;
+
+import fr.pickaria.pterodactylpoweraction.Configuration;
+import fr.pickaria.pterodactylpoweraction.PluginFixture;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Getters called on every event, which should only read the fields of the snapshot.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@State(Scope.Benchmark)
+public class YamlConfigurationBenchmark {
+    private PluginFixture fixture;
+    private Configuration configuration;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        fixture = new PluginFixture(100);
+        configuration = fixture.configurationLoader.getConfiguration();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        fixture.close();
+    }
+
+    @Benchmark
+    public void eventGetters(Blackhole blackhole) {
+        blackhole.consume(configuration.getWaitingServerName());
+        blackhole.consume(configuration.getShutdownAfterDuration());
+        blackhole.consume(configuration.getRedirectToWaitingServerOnKick());
+        blackhole.consume(configuration.isSpeculativeStartEnabled());
+    }
+
+    @Benchmark
+    public Object serverLookup() {
+        return configuration.getPowerCommands("server-50");
+    }
+
+    @Benchmark
+    public Object configurationLoaderLookup() {
+        // What most components call, going through the volatile snapshot field
+        return fixture.configurationLoader.getConfiguration().getShutdownAfterDuration();
+    }
+}
@@ -0,0 +1,58 @@
+package fr.pickaria.pterodactylpoweraction.online;
+
+import com.google.gson.Gson;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of the messages sent by Wings on the status sockets, the stats being sent every second by every running
+ * server. The decoder used by the plugin is compared with a full deserialization by Gson.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+public class PterodactylWebSocketPayloadBenchmark {
+    private static final String STATUS = "{\"event\":\"status\",\"args\":[\"running\"]}";
+    private static final String STATS = "{\"event\":\"stats\",\"args\":[\"{\\\"memory_bytes\\\":2147483648,\\\"memory_limit_bytes\\\":4294967296,\\\"cpu_absolute\\\":12.345,\\\"network\\\":{\\\"rx_bytes\\\":123456,\\\"tx_bytes\\\":654321},\\\"uptime\\\":3600000,\\\"state\\\":\\\"running\\\",\\\"disk_bytes\\\":1073741824}\"]}";
+    private static final String CONSOLE_OUTPUT = "{\"event\":\"console output\",\"args\":[\"[12:34:56 INFO]: Done (4.321s)! For help, type \\\"help\\\"\"]}";
+
+    private final Gson gson = new Gson();
+    private final PterodactylEventDecoder decoder = new PterodactylEventDecoder();
+
+    @Benchmark
+    public PterodactylWebSocketPayload status() {
+        return gson.fromJson(STATUS, PterodactylWebSocketPayload.class);
+    }
+
+    @Benchmark
+    public PterodactylWebSocketPayload stats() {
+        return gson.fromJson(STATS, PterodactylWebSocketPayload.class);
+    }
+
+    @Benchmark
+    public PterodactylWebSocketPayload consoleOutput() {
+        return gson.fromJson(CONSOLE_OUTPUT, PterodactylWebSocketPayload.class);
+    }
+
+    @Benchmark
+    public String decodeStatus() {
+        decoder.decode(STATUS);
+        return decoder.readFirstArgument().orElseThrow();
+    }
+
+    @Benchmark
+    public PterodactylEventDecoder.Event decodeStats() {
+        return decoder.decode(STATS);
+    }
+
+    @Benchmark
+    public PterodactylEventDecoder.Event decodeConsoleOutput() {
+        return decoder.decode(CONSOLE_OUTPUT);
+    }
+}
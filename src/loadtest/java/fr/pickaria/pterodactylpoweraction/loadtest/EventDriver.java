@@ -0,0 +1,197 @@
+package fr.pickaria.pterodactylpoweraction.loadtest;
+
+import com.velocitypowered.api.event.Continuation;
+import com.velocitypowered.api.event.EventTask;
+import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.player.KickedFromServerEvent;
+import com.velocitypowered.api.event.player.ServerConnectedEvent;
+import com.velocitypowered.api.event.player.ServerPreConnectEvent;
+import com.velocitypowered.api.proxy.ConnectionRequestBuilder;
+import com.velocitypowered.api.proxy.Player;
+import com.velocitypowered.api.proxy.ServerConnection;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import fr.pickaria.pterodactylpoweraction.ConnectionListener;
+import fr.pickaria.pterodactylpoweraction.Fakes;
+import net.kyori.adventure.text.Component;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fires the events Velocity would fire for the players through the connection listener, following its decisions as
+ * the proxy does: players are connected where the listener allowed them, and redirected when the plugin asks for it.
+ */
+class EventDriver {
+    private final ConnectionListener listener;
+    private final Map<String, Set<Player>> playersByServer = new ConcurrentHashMap<>();
+    private final List<Long> preConnectLatencies = new ArrayList<>();
+
+    EventDriver(ConnectionListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * @return The players currently connected to the server, for the fake servers
+     */
+    Collection<Player> getPlayers(String serverName) {
+        return playersByServer.computeIfAbsent(serverName, name -> ConcurrentHashMap.newKeySet());
+    }
+
+    SimulatedPlayer createPlayer() {
+        return new SimulatedPlayer(UUID.randomUUID());
+    }
+
+    /**
+     * Fire the events of a player asking to connect to the server.
+     *
+     * @return A future completing with the server the player ended up on, or empty if they were denied
+     */
+    CompletableFuture<Optional<RegisteredServer>> connect(SimulatedPlayer player, RegisteredServer server) {
+        long startedAt = System.nanoTime();
+        RegisteredServer previousServer = player.currentServer;
+        ServerPreConnectEvent event = previousServer == null
+                ? new ServerPreConnectEvent(player.player, server)
+                : new ServerPreConnectEvent(player.player, server, previousServer);
+
+        return execute(listener.onServerPreConnect(event)).thenApply(ignored -> {
+            recordPreConnectLatency(System.nanoTime() - startedAt);
+            Optional<RegisteredServer> destination = event.getResult().getServer();
+            if (destination.isPresent() && player.isOnline) {
+                move(player, destination.get());
+                listener.onServerConnected(new ServerConnectedEvent(player.player, destination.get(), previousServer));
+            }
+            return destination;
+        });
+    }
+
+    CompletableFuture<Void> kick(SimulatedPlayer player) {
+        RegisteredServer server = player.currentServer;
+        if (server == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Component reason = Component.text("Kicked by the load test");
+        KickedFromServerEvent event = new KickedFromServerEvent(player.player, server, reason, false, KickedFromServerEvent.Notify.create(reason));
+        return execute(listener.onKicked(event)).thenRun(() -> {
+            if (event.getResult() instanceof KickedFromServerEvent.RedirectPlayer redirect) {
+                move(player, redirect.getServer());
+            } else if (event.getResult() instanceof KickedFromServerEvent.DisconnectPlayer) {
+                disconnect(player);
+            }
+        });
+    }
+
+    void disconnect(SimulatedPlayer player) {
+        if (!player.isOnline) {
+            return;
+        }
+        listener.onDisconnect(new DisconnectEvent(player.player, DisconnectEvent.LoginStatus.SUCCESSFUL_LOGIN));
+        player.isOnline = false;
+        move(player, null);
+    }
+
+    /**
+     * @return The latencies of the pre-connect events recorded since the last call, in nanoseconds
+     */
+    synchronized List<Long> drainPreConnectLatencies() {
+        List<Long> latencies = new ArrayList<>(preConnectLatencies);
+        preConnectLatencies.clear();
+        return latencies;
+    }
+
+    private synchronized void recordPreConnectLatency(long nanos) {
+        preConnectLatencies.add(nanos);
+    }
+
+    private void move(SimulatedPlayer player, RegisteredServer server) {
+        if (player.currentServer != null) {
+            getPlayers(player.currentServer.getServerInfo().getName()).remove(player.player);
+        }
+        player.currentServer = server;
+        if (server != null) {
+            getPlayers(server.getServerInfo().getName()).add(player.player);
+        }
+    }
+
+    /**
+     * Run the task as the event manager of Velocity does, completing once the event can proceed.
+     */
+    private static CompletableFuture<Void> execute(EventTask task) {
+        CompletableFuture<Void> completed = new CompletableFuture<>();
+        if (task == null) {
+            completed.complete(null);
+            return completed;
+        }
+
+        task.execute(new Continuation() {
+            @Override
+            public void resume() {
+                completed.complete(null);
+            }
+
+            @Override
+            public void resumeWithException(Throwable exception) {
+                completed.completeExceptionally(exception);
+            }
+        });
+        return completed;
+    }
+
+    /**
+     * A player of the load test, its fake following the server it is connected to.
+     */
+    final class SimulatedPlayer {
+        final Player player;
+        private volatile RegisteredServer currentServer;
+        private volatile boolean isOnline = true;
+
+        private SimulatedPlayer(UUID uniqueId) {
+            String username = "player-" + uniqueId.toString().substring(0, 8);
+            player = Fakes.fake(Player.class, Map.of(
+                    "getUniqueId", args -> uniqueId,
+                    "getUsername", args -> username,
+                    "isActive", args -> isOnline,
+                    "getCurrentServer", args -> Optional.ofNullable(currentServer).map(this::createConnection),
+                    "createConnectionRequest", args -> createConnectionRequest((RegisteredServer) args[0]),
+                    "disconnect", args -> {
+                        EventDriver.this.disconnect(this);
+                        return null;
+                    }
+            ));
+        }
+
+        RegisteredServer getCurrentServer() {
+            return currentServer;
+        }
+
+        private ServerConnection createConnection(RegisteredServer server) {
+            return Fakes.fake(ServerConnection.class, Map.of(
+                    "getServer", args -> server,
+                    "getServerInfo", args -> server.getServerInfo(),
+                    "getPlayer", args -> player
+            ));
+        }
+
+        /**
+         * Connection requests made by the plugin go through the same events as the ones made by players.
+         */
+        private ConnectionRequestBuilder createConnectionRequest(RegisteredServer server) {
+            return Fakes.fake(ConnectionRequestBuilder.class, Map.of(
+                    "connect", args -> connect(this, server).thenApply(destination -> {
+                        boolean isSuccessful = destination.isPresent() && destination.get() == server;
+                        return Fakes.fake(ConnectionRequestBuilder.Result.class, Map.of(
+                                "isSuccessful", resultArgs -> isSuccessful,
+                                "getReasonComponent", resultArgs -> Optional.empty()
+                        ));
+                    })
+            ));
+        }
+    }
+}
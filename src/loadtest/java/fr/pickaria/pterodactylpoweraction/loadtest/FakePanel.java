@@ -0,0 +1,221 @@
+package fr.pickaria.pterodactylpoweraction.loadtest;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+/**
+ * Stand-in for the client API of a Pterodactyl panel and the status sockets of Wings, holding the servers in memory.
+ * Servers take the configured time to boot, and power requests randomly fail or get rate limited.
+ */
+public class FakePanel implements AutoCloseable {
+    private static final String API_PATH = "/api/client/servers/";
+
+    private final Settings settings;
+    private final Map<String, FakeServer> servers = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "Fake Panel Scheduler");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final ExecutorService httpExecutor = Executors.newFixedThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "Fake Panel HTTP");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final HttpServer httpServer;
+    private final StatusSocketServer socketServer;
+
+    final LongAdder powerRequests = new LongAdder();
+    final LongAdder redundantPowerRequests = new LongAdder();
+    final LongAdder rateLimitedRequests = new LongAdder();
+    final LongAdder failedRequests = new LongAdder();
+    final LongAdder credentialRequests = new LongAdder();
+
+    /**
+     * @param bootDelay     Time a server takes to be running once started
+     * @param stopDelay     Time a server takes to be offline once stopped
+     * @param failureRate   Share of the power requests answered with an error
+     * @param rateLimitRate Share of the requests answered with {@code 429 Too Many Requests}
+     */
+    public record Settings(Duration bootDelay, Duration stopDelay, double failureRate, double rateLimitRate) {
+    }
+
+    public FakePanel(Settings settings) throws IOException {
+        this.settings = settings;
+        this.socketServer = new StatusSocketServer(this);
+        this.httpServer = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        httpServer.setExecutor(httpExecutor);
+        httpServer.createContext(API_PATH, this::handle);
+        httpServer.start();
+    }
+
+    public void addServer(String identifier, String status) {
+        servers.put(identifier, new FakeServer(status));
+    }
+
+    public String getBaseURL() {
+        return "http://127.0.0.1:" + httpServer.getAddress().getPort() + "/api/client";
+    }
+
+    @Override
+    public void close() {
+        httpServer.stop(0);
+        httpExecutor.shutdown();
+        socketServer.close();
+        scheduler.shutdown();
+    }
+
+    /**
+     * @return The server, or null if it does not exist
+     */
+    FakeServer getServer(String identifier) {
+        return servers.get(identifier);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            String body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+            }
+
+            String[] path = exchange.getRequestURI().getPath().substring(API_PATH.length()).split("/");
+            FakeServer server = servers.get(path[0]);
+            if (server == null) {
+                respond(exchange, 404, "{\"errors\":[]}");
+                return;
+            }
+            if (ThreadLocalRandom.current().nextDouble() < settings.rateLimitRate()) {
+                rateLimitedRequests.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                respond(exchange, 429, "{\"errors\":[]}");
+                return;
+            }
+
+            String action = path.length > 1 ? path[1] : "";
+            switch (action) {
+                case "" -> respond(exchange, 200, "{\"object\":\"server\",\"attributes\":{\"identifier\":\"" + path[0] + "\"}}");
+                case "power" -> handlePower(exchange, server, body);
+                case "websocket" -> {
+                    credentialRequests.increment();
+                    String socket = socketServer.getURL(path[0]);
+                    respond(exchange, 200, "{\"data\":{\"token\":\"token\",\"socket\":\"" + socket + "\"}}");
+                }
+                default -> respond(exchange, 404, "{\"errors\":[]}");
+            }
+        }
+    }
+
+    private void handlePower(HttpExchange exchange, FakeServer server, String body) throws IOException {
+        powerRequests.increment();
+        if (ThreadLocalRandom.current().nextDouble() < settings.failureRate()) {
+            failedRequests.increment();
+            respond(exchange, 500, "{\"errors\":[]}");
+            return;
+        }
+
+        boolean isApplied = body.contains("\"stop\"") ? server.stop() : server.start();
+        if (!isApplied) {
+            redundantPowerRequests.increment();
+        }
+        respond(exchange, 204, null);
+    }
+
+    private static void respond(HttpExchange exchange, int statusCode, String body) throws IOException {
+        if (body == null) {
+            exchange.sendResponseHeaders(statusCode, -1);
+            return;
+        }
+
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(statusCode, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * A server of the panel, notifying the status sockets when its status changes.
+     */
+    final class FakeServer {
+        private final Set<Consumer<String>> listeners = ConcurrentHashMap.newKeySet();
+        private String status;
+
+        private FakeServer(String status) {
+            this.status = status;
+        }
+
+        synchronized String getStatus() {
+            return status;
+        }
+
+        void addListener(Consumer<String> listener) {
+            listeners.add(listener);
+        }
+
+        void removeListener(Consumer<String> listener) {
+            listeners.remove(listener);
+        }
+
+        /**
+         * @return false if the server was not offline, the request being redundant
+         */
+        private boolean start() {
+            return transition("offline", "starting", "running", settings.bootDelay());
+        }
+
+        /**
+         * @return false if the server was not running, the request being redundant
+         */
+        private boolean stop() {
+            return transition("running", "stopping", "offline", settings.stopDelay());
+        }
+
+        private boolean transition(String expected, String next, String eventually, Duration delay) {
+            synchronized (this) {
+                if (!status.equals(expected)) {
+                    return false;
+                }
+                status = next;
+            }
+            notifyListeners(next);
+            scheduler.schedule(() -> setStatus(next, eventually), delay.toMillis(), TimeUnit.MILLISECONDS);
+            return true;
+        }
+
+        private void setStatus(String expected, String status) {
+            synchronized (this) {
+                if (!this.status.equals(expected)) {
+                    return;
+                }
+                this.status = status;
+            }
+            notifyListeners(status);
+        }
+
+        private void notifyListeners(String status) {
+            for (Consumer<String> listener : listeners) {
+                listener.accept(status);
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package fr.pickaria.pterodactylpoweraction.loadtest;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import fr.pickaria.pterodactylpoweraction.Fakes;
+import fr.pickaria.pterodactylpoweraction.PluginFixture;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replays a login storm, such as every player reconnecting after a restart of the proxy, against the plugin wired to a
+ * fake Pterodactyl panel. Every server is offline when the storm starts.
+ * <p>
+ * Options, given as {@code --name value}:
+ * <ul>
+ *     <li>{@code players}: number of players joining at once, 500 by default</li>
+ *     <li>{@code servers}: number of servers they are spread over, 10 by default</li>
+ *     <li>{@code boot-delay}: time a server takes to boot, in milliseconds, 5000 by default</li>
+ *     <li>{@code failure-rate}: share of the power requests failing, 0 by default</li>
+ *     <li>{@code rate-limit-rate}: share of the requests rejected by the rate limit, 0 by default</li>
+ *     <li>{@code kick-rate}: share of the players kicked once everyone is connected, 0.1 by default</li>
+ * </ul>
+ */
+public class LoadTest {
+    private static final Duration SETTLE_TIMEOUT = Duration.ofMinutes(2);
+    private static final int EVENT_THREADS = 16;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseOptions(args);
+        int playerCount = Integer.parseInt(options.getOrDefault("players", "500"));
+        int serverCount = Integer.parseInt(options.getOrDefault("servers", "10"));
+        Duration bootDelay = Duration.ofMillis(Long.parseLong(options.getOrDefault("boot-delay", "5000")));
+        double failureRate = Double.parseDouble(options.getOrDefault("failure-rate", "0"));
+        double rateLimitRate = Double.parseDouble(options.getOrDefault("rate-limit-rate", "0"));
+        double kickRate = Double.parseDouble(options.getOrDefault("kick-rate", "0.1"));
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long threadsBefore = threads.getTotalStartedThreadCount();
+
+        FakePanel.Settings settings = new FakePanel.Settings(bootDelay, bootDelay.dividedBy(5), failureRate, rateLimitRate);
+        try (FakePanel panel = new FakePanel(settings)) {
+            Map<String, String> identifiers = new LinkedHashMap<>();
+            Map<String, RegisteredServer> servers = new LinkedHashMap<>();
+            EventDriver[] driver = new EventDriver[1];
+
+            for (int i = -1; i < serverCount; i++) {
+                String serverName = i < 0 ? PluginFixture.WAITING_SERVER_NAME : "server-" + i;
+                String identifier = UUID.randomUUID().toString();
+                identifiers.put(serverName, identifier);
+                // The waiting server is always running
+                panel.addServer(identifier, i < 0 ? "running" : "offline");
+                servers.put(serverName, Fakes.registeredServer(serverName, () -> driver[0].getPlayers(serverName)));
+            }
+
+            try (PluginFixture fixture = new PluginFixture(servers, serverNames -> createConfiguration(panel, identifiers))) {
+                driver[0] = new EventDriver(fixture.connectionListener);
+                run(driver[0], fixture, panel, playerCount, kickRate);
+            }
+        }
+
+        System.out.printf("Threads started: %d, peak live threads: %d%n", threads.getTotalStartedThreadCount() - threadsBefore, threads.getPeakThreadCount());
+        System.exit(0);
+    }
+
+    private static void run(EventDriver driver, PluginFixture fixture, FakePanel panel, int playerCount, double kickRate) throws Exception {
+        List<EventDriver.SimulatedPlayer> players = new ArrayList<>();
+        Map<EventDriver.SimulatedPlayer, RegisteredServer> destinations = new HashMap<>();
+        for (int i = 0; i < playerCount; i++) {
+            EventDriver.SimulatedPlayer player = driver.createPlayer();
+            players.add(player);
+            destinations.put(player, fixture.servers.get(i % fixture.servers.size()));
+        }
+
+        ExecutorService eventThreads = Executors.newFixedThreadPool(EVENT_THREADS);
+        try {
+            System.out.printf("Login storm: %d players over %d servers%n", playerCount, fixture.servers.size());
+            long startedAt = System.nanoTime();
+            List<CompletableFuture<?>> decisions = new ArrayList<>();
+            for (EventDriver.SimulatedPlayer player : players) {
+                decisions.add(CompletableFuture.supplyAsync(() -> driver.connect(player, destinations.get(player)), eventThreads).thenCompose(decision -> decision));
+            }
+            CompletableFuture.allOf(decisions.toArray(CompletableFuture[]::new)).get(SETTLE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+            long decidedAt = System.nanoTime();
+            report("pre-connect", driver.drainPreConnectLatencies(), decidedAt - startedAt);
+
+            boolean hasSettled = awaitSettled(players, destinations);
+            System.out.printf("Players on their server: %s after %d ms%n", hasSettled ? "all" : "not all", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt));
+
+            List<EventDriver.SimulatedPlayer> kicked = players.stream()
+                    .filter(player -> ThreadLocalRandom.current().nextDouble() < kickRate)
+                    .toList();
+            System.out.printf("Kick storm: %d players%n", kicked.size());
+            List<CompletableFuture<?>> kicks = new ArrayList<>();
+            for (EventDriver.SimulatedPlayer player : kicked) {
+                kicks.add(CompletableFuture.supplyAsync(() -> driver.kick(player), eventThreads).thenCompose(kick -> kick));
+            }
+            CompletableFuture.allOf(kicks.toArray(CompletableFuture[]::new)).get(SETTLE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+
+            System.out.printf("Disconnect storm: %d players%n", playerCount);
+            List<CompletableFuture<?>> disconnections = new ArrayList<>();
+            for (EventDriver.SimulatedPlayer player : players) {
+                disconnections.add(CompletableFuture.runAsync(() -> driver.disconnect(player), eventThreads));
+            }
+            CompletableFuture.allOf(disconnections.toArray(CompletableFuture[]::new)).get(SETTLE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        } finally {
+            eventThreads.shutdown();
+        }
+
+        System.out.printf("Panel: %d power requests, %d redundant, %d failed, %d rate limited, %d socket credentials%n",
+                panel.powerRequests.sum(), panel.redundantPowerRequests.sum(), panel.failedRequests.sum(),
+                panel.rateLimitedRequests.sum(), panel.credentialRequests.sum());
+    }
+
+    /**
+     * Wait for the players to be redirected to the servers they asked for once these have started.
+     */
+    private static boolean awaitSettled(Collection<EventDriver.SimulatedPlayer> players, Map<EventDriver.SimulatedPlayer, RegisteredServer> destinations) throws InterruptedException {
+        long deadline = System.nanoTime() + SETTLE_TIMEOUT.toNanos();
+        while (System.nanoTime() < deadline) {
+            if (players.stream().allMatch(player -> player.getCurrentServer() == destinations.get(player))) {
+                return true;
+            }
+            Thread.sleep(100);
+        }
+        return false;
+    }
+
+    private static void report(String name, List<Long> latencies, long elapsedNanos) {
+        if (latencies.isEmpty()) {
+            System.out.printf("No %s event recorded%n", name);
+            return;
+        }
+
+        Collections.sort(latencies);
+        double seconds = elapsedNanos / 1e9;
+        System.out.printf("%s: %d events, %.0f events/s, p50 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                name, latencies.size(), latencies.size() / seconds,
+                getPercentile(latencies, 0.50) / 1e6, getPercentile(latencies, 0.99) / 1e6, latencies.get(latencies.size() - 1) / 1e6);
+    }
+
+    private static long getPercentile(List<Long> sortedLatencies, double percentile) {
+        int index = (int) Math.ceil(percentile * sortedLatencies.size()) - 1;
+        return sortedLatencies.get(Math.max(0, index));
+    }
+
+    private static String createConfiguration(FakePanel panel, Map<String, String> identifiers) {
+        StringBuilder configuration = new StringBuilder()
+                .append("type: \"pterodactyl\"\n")
+                .append("ping_method: \"pterodactyl\"\n")
+                .append("pterodactyl_api_key: \"ptlc_loadtest\"\n")
+                .append("pterodactyl_client_api_base_url: \"").append(panel.getBaseURL()).append("\"\n")
+                .append("waiting_server_name: \"").append(PluginFixture.WAITING_SERVER_NAME).append("\"\n")
+                .append("start_waiting_server_on_startup: false\n")
+                .append("servers:\n");
+        identifiers.forEach((serverName, identifier) -> configuration.append("  ").append(serverName).append(": \"").append(identifier).append("\"\n"));
+        return configuration.toString();
+    }
+
+    private static Map<String, String> parseOptions(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            if (!args[i].startsWith("--")) {
+                throw new IllegalArgumentException("Expected an option, got " + args[i]);
+            }
+            options.put(args[i].substring(2), args[i + 1]);
+        }
+        return options;
+    }
+}
@@ -0,0 +1,206 @@
+package fr.pickaria.pterodactylpoweraction.loadtest;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Minimal WebSocket server standing in for the status sockets of Wings.
+ * Each socket sends the status of its server once authenticated, then every change of it. One thread per socket is
+ * enough for a test.
+ */
+class StatusSocketServer {
+    private static final String WEBSOCKET_GUID = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
+    private static final int OPCODE_TEXT = 0x1;
+    private static final int OPCODE_CLOSE = 0x8;
+    private static final int OPCODE_PING = 0x9;
+    private static final int OPCODE_PONG = 0xA;
+
+    private final FakePanel panel;
+    private final ServerSocket serverSocket;
+
+    StatusSocketServer(FakePanel panel) throws IOException {
+        this.panel = panel;
+        this.serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        startThread("Fake Wings Acceptor", this::accept);
+    }
+
+    String getURL(String identifier) {
+        return "ws://127.0.0.1:" + serverSocket.getLocalPort() + "/servers/" + identifier + "/ws";
+    }
+
+    void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+            // Closing anyway
+        }
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                startThread("Fake Wings Socket", () -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        Consumer<String> listener = null;
+        FakePanel.FakeServer server = null;
+
+        try (socket) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            OutputStream out = socket.getOutputStream();
+
+            String requestLine = readLine(in);
+            Map<String, String> headers = readHeaders(in);
+            String[] path = requestLine.split(" ")[1].split("/");
+            server = path.length > 2 ? panel.getServer(path[2]) : null;
+            if (server == null || !headers.containsKey("sec-websocket-key")) {
+                out.write("HTTP/1.1 404 Not Found\r\nContent-Length: 0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+                return;
+            }
+
+            String accept = Base64.getEncoder().encodeToString(MessageDigest.getInstance("SHA-1")
+                    .digest((headers.get("sec-websocket-key") + WEBSOCKET_GUID).getBytes(StandardCharsets.ISO_8859_1)));
+            out.write(("HTTP/1.1 101 Switching Protocols\r\n"
+                    + "Upgrade: websocket\r\n"
+                    + "Connection: Upgrade\r\n"
+                    + "Sec-WebSocket-Accept: " + accept + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+            out.flush();
+
+            while (true) {
+                int first = in.readUnsignedByte();
+                int opcode = first & 0x0F;
+                byte[] payload = readPayload(in);
+
+                if (opcode == OPCODE_CLOSE) {
+                    sendFrame(out, OPCODE_CLOSE, payload);
+                    return;
+                } else if (opcode == OPCODE_PING) {
+                    sendFrame(out, OPCODE_PONG, payload);
+                } else if (opcode == OPCODE_TEXT && listener == null && new String(payload, StandardCharsets.UTF_8).contains("\"auth\"")) {
+                    sendText(out, "{\"event\":\"auth success\"}");
+                    listener = status -> sendStatus(out, status);
+                    server.addListener(listener);
+                    sendStatus(out, server.getStatus());
+                }
+            }
+        } catch (IOException | NoSuchAlgorithmException e) {
+            // The client went away
+        } finally {
+            if (listener != null) {
+                server.removeListener(listener);
+            }
+        }
+    }
+
+    private static void sendStatus(OutputStream out, String status) {
+        try {
+            sendText(out, "{\"event\":\"status\",\"args\":[\"" + status + "\"]}");
+        } catch (IOException ignored) {
+            // The reading thread notices the socket is gone
+        }
+    }
+
+    private static void sendText(OutputStream out, String text) throws IOException {
+        sendFrame(out, OPCODE_TEXT, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Send a single unmasked frame, as servers do.
+     */
+    private static void sendFrame(OutputStream out, int opcode, byte[] payload) throws IOException {
+        synchronized (out) {
+            out.write(0x80 | opcode);
+            if (payload.length < 126) {
+                out.write(payload.length);
+            } else if (payload.length <= 0xFFFF) {
+                out.write(126);
+                out.write(payload.length >>> 8);
+                out.write(payload.length);
+            } else {
+                out.write(127);
+                for (int shift = 56; shift >= 0; shift -= 8) {
+                    out.write((int) ((long) payload.length >>> shift));
+                }
+            }
+            out.write(payload);
+            out.flush();
+        }
+    }
+
+    /**
+     * Read the payload of a frame sent by a client, which is always masked.
+     */
+    private static byte[] readPayload(DataInputStream in) throws IOException {
+        int second = in.readUnsignedByte();
+        long length = second & 0x7F;
+        if (length == 126) {
+            length = in.readUnsignedShort();
+        } else if (length == 127) {
+            length = in.readLong();
+        }
+
+        byte[] mask = new byte[4];
+        if ((second & 0x80) != 0) {
+            in.readFully(mask);
+        }
+        byte[] payload = new byte[(int) length];
+        in.readFully(payload);
+        for (int i = 0; i < payload.length; i++) {
+            payload[i] ^= mask[i % 4];
+        }
+        return payload;
+    }
+
+    private static Map<String, String> readHeaders(InputStream in) throws IOException {
+        Map<String, String> headers = new HashMap<>();
+        String line;
+        while (!(line = readLine(in)).isEmpty()) {
+            int separator = line.indexOf(':');
+            if (separator > 0) {
+                headers.put(line.substring(0, separator).trim().toLowerCase(Locale.ROOT), line.substring(separator + 1).trim());
+            }
+        }
+        return headers;
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b == -1) {
+                throw new IOException("Connection closed");
+            }
+            if (b != '\r') {
+                line.write(b);
+            }
+        }
+        return line.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    private static void startThread(String name, Runnable runnable) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+}
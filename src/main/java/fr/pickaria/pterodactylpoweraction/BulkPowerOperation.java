@@ -0,0 +1,165 @@
+package fr.pickaria.pterodactylpoweraction;
+
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Applies a power action to many servers at once, with a bounded number of requests in flight and a deadline after
+ * which the remaining servers are given up on.
+ * No thread is held while waiting, each completed request sends the next one.
+ */
+public class BulkPowerOperation {
+    private final String actionName;
+    private final int parallelism;
+    private final Duration deadline;
+    private final Logger logger;
+
+    /**
+     * @param actionName  Name of the action, used in the logs
+     * @param parallelism Maximum number of requests in flight
+     * @param deadline    Time after which pending requests are abandoned
+     */
+    public BulkPowerOperation(String actionName, int parallelism, Duration deadline, Logger logger) {
+        this.actionName = actionName;
+        this.parallelism = Math.max(1, parallelism);
+        this.deadline = deadline;
+        this.logger = logger;
+    }
+
+    /**
+     * Apply the action to every server.
+     *
+     * @param serverNames The servers to apply the action to
+     * @param action      The action to apply to a single server, telling whether it was sent or skipped
+     * @return A future completing with the outcome of each server, sorted by server name, once every server has an
+     * outcome, never completing exceptionally
+     */
+    public CompletableFuture<Map<String, Outcome>> run(Collection<String> serverNames, Function<String, CompletableFuture<PowerActionCoordinator.Result>> action) {
+        Run run = new Run(serverNames, action);
+        run.start();
+        return run.result;
+    }
+
+    public enum Status {
+        SUCCEEDED,
+        FAILED,
+        TIMED_OUT,
+        /**
+         * The deadline expired before the request could be sent.
+         */
+        SKIPPED,
+        /**
+         * The request was not sent, as the server was already in the requested state.
+         */
+        SKIPPED_REDUNDANT,
+    }
+
+    public record Outcome(Status status, Duration latency) {
+    }
+
+    private final class Run {
+        private final Queue<String> pending;
+        private final Function<String, CompletableFuture<PowerActionCoordinator.Result>> action;
+        private final Map<String, Outcome> outcomes = new ConcurrentHashMap<>();
+        private final CompletableFuture<Map<String, Outcome>> result = new CompletableFuture<>();
+        private final AtomicInteger activeLanes = new AtomicInteger();
+        private final long startedAt = System.nanoTime();
+        private final long deadlineAt = startedAt + deadline.toNanos();
+
+        private Run(Collection<String> serverNames, Function<String, CompletableFuture<PowerActionCoordinator.Result>> action) {
+            this.pending = new ConcurrentLinkedQueue<>(serverNames);
+            this.action = action;
+        }
+
+        private void start() {
+            int lanes = Math.min(parallelism, pending.size());
+            if (lanes == 0) {
+                complete();
+                return;
+            }
+
+            activeLanes.set(lanes);
+            for (int i = 0; i < lanes; i++) {
+                next();
+            }
+        }
+
+        /**
+         * Send the request of the next pending server, or end this lane once none is left.
+         */
+        private void next() {
+            String serverName;
+            while ((serverName = pending.poll()) != null) {
+                long remaining = deadlineAt - System.nanoTime();
+                if (remaining > 0) {
+                    send(serverName, remaining);
+                    return;
+                }
+                record(serverName, Status.SKIPPED, Duration.ZERO, null);
+            }
+
+            if (activeLanes.decrementAndGet() == 0) {
+                complete();
+            }
+        }
+
+        private void send(String serverName, long remaining) {
+            long sentAt = System.nanoTime();
+            CompletableFuture<PowerActionCoordinator.Result> request;
+            try {
+                // Copy so that the timeout does not complete a future shared with other callers
+                request = action.apply(serverName).copy();
+            } catch (RuntimeException exception) {
+                request = CompletableFuture.failedFuture(exception);
+            }
+
+            request.orTimeout(remaining, TimeUnit.NANOSECONDS).whenComplete((result, throwable) -> {
+                Duration latency = Duration.ofNanos(System.nanoTime() - sentAt);
+                if (throwable == null) {
+                    record(serverName, result == PowerActionCoordinator.Result.SKIPPED ? Status.SKIPPED_REDUNDANT : Status.SUCCEEDED, latency, null);
+                } else if (throwable instanceof TimeoutException) {
+                    record(serverName, Status.TIMED_OUT, latency, null);
+                } else {
+                    record(serverName, Status.FAILED, latency, throwable);
+                }
+                next();
+            });
+        }
+
+        private void record(String serverName, Status status, Duration latency, Throwable throwable) {
+            outcomes.put(serverName, new Outcome(status, latency));
+            switch (status) {
+                case SUCCEEDED ->
+                        logger.info("Sent {} to server '{}' in {} ms.", actionName, serverName, latency.toMillis());
+                case FAILED ->
+                        logger.error("Could not send {} to server '{}' after {} ms", actionName, serverName, latency.toMillis(), throwable);
+                case TIMED_OUT ->
+                        logger.warn("Gave up on sending {} to server '{}' after {} ms.", actionName, serverName, latency.toMillis());
+                case SKIPPED ->
+                        logger.warn("Did not send {} to server '{}' as the deadline expired.", actionName, serverName);
+                case SKIPPED_REDUNDANT ->
+                        logger.info("Did not send {} to server '{}' as it is already done.", actionName, serverName);
+            }
+        }
+
+        private void complete() {
+            long succeeded = outcomes.values().stream().filter(outcome -> outcome.status() == Status.SUCCEEDED).count();
+            long redundant = outcomes.values().stream().filter(outcome -> outcome.status() == Status.SKIPPED_REDUNDANT).count();
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - startedAt);
+            logger.info("Sent {} to {} of {} servers in {} ms, {} did not need it.", actionName, succeeded, outcomes.size(), elapsed.toMillis(), redundant);
+            result.complete(new TreeMap<>(outcomes));
+        }
+    }
+}
@@ -5,9 +5,11 @@ import fr.pickaria.pterodactylpoweraction.configuration.PingMethod;
 import fr.pickaria.pterodactylpoweraction.configuration.ShutdownBehaviour;
 
 import java.time.Duration;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
+import java.util.regex.Pattern;
 
 public interface Configuration {
     Map<String, Object> getRawConfig();
@@ -34,10 +36,85 @@ public interface Configuration {
 
     Duration getShutdownAfterDuration();
 
+    Duration getShutdownDeadline();
+
+    int getShutdownParallelism();
+
+    /**
+     * @return Maximum number of shell commands running at the same time
+     */
+    int getShellParallelism();
+
+    boolean isPredictiveStartEnabled();
+
+    Duration getPredictiveStartLeadTime();
+
+    Duration getPredictiveStartIdleTimeout();
+
+    boolean isSpeculativeStartEnabled();
+
+    boolean isCpuSettleAwaited();
+
+    /**
+     * @return CPU usage in percent of a single core below which a server that just started is considered settled
+     */
+    int getSettleCpuThreshold();
+
+    Duration getSettleDuration();
+
+    boolean isIdleStopEnabled();
+
+    /**
+     * @return CPU usage in percent of a single core below which an empty server is considered idle
+     */
+    int getIdleCpuThreshold();
+
+    Duration getIdleDuration();
+
+    /**
+     * @return The pattern of the console line telling the server is ready, or empty if its console is not watched
+     */
+    Optional<Pattern> getConsoleReadyPattern(String serverName);
+
+    boolean isConfigurationWatched();
+
+    int getMetricsPort();
+
+    String getMetricsAddress();
+
     boolean getRedirectToWaitingServerOnKick();
 
     Set<String> getAllServers();
 
-    record PowerCommands(Optional<String> workingDirectory, String start, String stop) {
+    Optional<ServerSettings> getServer(String serverName);
+
+    /**
+     * @return The groups of servers of which a minimum number must be kept running, malformed groups are left out
+     */
+    List<WarmPool> getWarmPools();
+
+    /**
+     * Settings of a single server, compared as a whole to tell which servers changed between two configurations.
+     */
+    record ServerSettings(String name, Optional<String> pterodactylIdentifier, Optional<PowerCommands> powerCommands) {
+    }
+
+    /**
+     * @param stop         Command stopping the server, optional when the server is supervised
+     * @param supervised   Whether the start command runs the server itself, whose process is then kept track of
+     * @param startTimeout Time given to the start command to exit
+     * @param stopTimeout  Time given to the stop command, or to the supervised process, to exit before being killed
+     * @param logFile      Log file of the supervised process, relative to the working directory
+     */
+    record PowerCommands(Optional<String> workingDirectory, String start, Optional<String> stop, boolean supervised,
+                         Duration startTimeout, Duration stopTimeout, String logFile) {
+    }
+
+    /**
+     * @param name           Name of the group
+     * @param servers        Servers of the group, in the order they are started in
+     * @param minimumRunning Number of servers of the group to keep running, whether players are on them or not
+     */
+    record WarmPool(String name, List<String> servers, int minimumRunning) {
     }
 }
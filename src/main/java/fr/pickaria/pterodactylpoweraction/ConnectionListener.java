@@ -1,7 +1,9 @@
 package fr.pickaria.pterodactylpoweraction;
 
+import com.velocitypowered.api.event.EventTask;
 import com.velocitypowered.api.event.Subscribe;
 import com.velocitypowered.api.event.connection.DisconnectEvent;
+import com.velocitypowered.api.event.connection.LoginEvent;
 import com.velocitypowered.api.event.player.KickedFromServerEvent;
 import com.velocitypowered.api.event.player.ServerConnectedEvent;
 import com.velocitypowered.api.event.player.ServerPreConnectEvent;
@@ -15,38 +17,68 @@ import fr.pickaria.messager.Messager;
 import fr.pickaria.messager.components.Text;
 import fr.pickaria.pterodactylpoweraction.component.RunCommand;
 import fr.pickaria.pterodactylpoweraction.configuration.ConfigurationLoader;
+import fr.pickaria.pterodactylpoweraction.metrics.Metrics;
 import net.kyori.adventure.text.Component;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 
-import java.util.HashMap;
-import java.util.Map;
-import java.util.NoSuchElementException;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 public class ConnectionListener {
     private final ProxyServer proxy;
     private final Logger logger;
     private final ConfigurationLoader configurationLoader;
-    private final Map<String, StartingServer> startingServers = new HashMap<>();
     private final ShutdownManager shutdownManager;
+    private final ReachabilityCache reachabilityCache;
+    private final ServerRegistry serverRegistry;
+    private final PowerActionCoordinator coordinator;
+    private final PreWarmer preWarmer;
+    private final SpeculativeStarter speculativeStarter;
+    private final Metrics metrics;
     private final Messager messager;
 
     ConnectionListener(
             ConfigurationLoader configurationLoader,
             ProxyServer proxy,
             Logger logger,
-            ShutdownManager shutdownManager
+            ShutdownManager shutdownManager,
+            ReachabilityCache reachabilityCache,
+            ServerRegistry serverRegistry,
+            PowerActionCoordinator coordinator,
+            PreWarmer preWarmer,
+            SpeculativeStarter speculativeStarter,
+            Metrics metrics
     ) {
         this.configurationLoader = configurationLoader;
         this.proxy = proxy;
         this.logger = logger;
         this.shutdownManager = shutdownManager;
+        this.reachabilityCache = reachabilityCache;
+        this.serverRegistry = serverRegistry;
+        this.coordinator = coordinator;
+        this.preWarmer = preWarmer;
+        this.speculativeStarter = speculativeStarter;
+        this.metrics = metrics;
         this.messager = new Messager();
     }
 
+    // Run last, so that the logins denied by other plugins do not start anything
+    @Subscribe(priority = Short.MIN_VALUE)
+    public void onLogin(LoginEvent event) {
+        // The unique id is only trusted once the player is authenticated
+        if (event.getResult().isAllowed()) {
+            speculativeStarter.speculate(event.getPlayer().getUniqueId());
+        }
+    }
+
     @Subscribe()
     public void onServerConnected(ServerConnectedEvent event) {
         Optional<RegisteredServer> previousServer = event.getPreviousServer();
+        speculativeStarter.onConnected(event.getPlayer().getUniqueId(), event.getServer());
+        preWarmer.recordJoin(event.getServer());
+        previousServer.ifPresent(preWarmer::recordLeave);
+
         // Check if we can shut down the previous server once the player has been redirected
         // This applies to redirection if the server is already running
         // and the automatic redirection after a server has been started
@@ -54,24 +86,35 @@ public class ConnectionListener {
     }
 
     @Subscribe()
-    public void onServerPreConnect(ServerPreConnectEvent event) {
+    public EventTask onServerPreConnect(ServerPreConnectEvent event) {
         RegisteredServer originalServer = event.getOriginalServer();
         RegisteredServer previousServer = event.getPreviousServer();
 
         shutdownManager.cancelTask(originalServer);
+        speculativeStarter.onConnecting(event.getPlayer().getUniqueId(), originalServer);
+
+        CompletableFuture<Void> decision = reachabilityCache.isReachable(originalServer).thenCompose(isReachable -> {
+            if (isReachable) {
+                // Server pinged successfully, we can connect the player to this server
+                event.setResult(ServerPreConnectEvent.ServerResult.allowed(originalServer));
+                return CompletableFuture.completedFuture(null);
+            }
 
-        if (isReachable(originalServer)) {
-            // Server pinged successfully, we can connect the player to this server
-            event.setResult(ServerPreConnectEvent.ServerResult.allowed(originalServer));
-        } else {
             boolean isAlreadyConnected = previousServer != null;
             if (isAlreadyConnected) {
                 // If the player is already connected on the network, we don't want to redirect it to the waiting server
                 event.setResult(ServerPreConnectEvent.ServerResult.denied());
-            } else {
-                Optional<RegisteredServer> waitingServer = getWaitingServer();
+                startServerForPlayer(originalServer, event.getPlayer());
+                return CompletableFuture.completedFuture(null);
+            }
+
+            Optional<RegisteredServer> waitingServer = getWaitingServer();
+            CompletableFuture<Boolean> isWaitingServerReachable = waitingServer.isPresent() && waitingServer.get() != originalServer
+                    ? reachabilityCache.isReachable(waitingServer.get())
+                    : CompletableFuture.completedFuture(false);
 
-                if (waitingServer.isPresent() && waitingServer.get() != originalServer && isReachable(waitingServer.get())) {
+            return isWaitingServerReachable.thenAccept(isWaitingReachable -> {
+                if (isWaitingReachable) {
                     // Server is not running, inform the player and redirect somewhere else
                     event.setResult(ServerPreConnectEvent.ServerResult.allowed(waitingServer.get()));
                 } else {
@@ -79,25 +122,25 @@ public class ConnectionListener {
                     event.setResult(ServerPreConnectEvent.ServerResult.denied());
                     event.getPlayer().disconnect(Component.translatable("kick.server.starting", Component.text(originalServer.getServerInfo().getName())));
                 }
-            }
 
-            startServerForPlayer(originalServer, event.getPlayer());
-        }
+                startServerForPlayer(originalServer, event.getPlayer());
+            });
+        });
+
+        return resumeWhenComplete(decision);
     }
 
     private void startServerForPlayer(RegisteredServer server, Player player) {
         String originalServerName = server.getServerInfo().getName();
-        boolean playerAddedToWaitingList;
 
-        // This is cached so that we don't ping the same server for every player that is waiting for it to start
-        if (startingServers.containsKey(originalServerName)) {
-            playerAddedToWaitingList = startingServers.get(originalServerName).addPlayer(player);
-        } else {
-            StartingServer startingServer = new StartingServer(server, configurationLoader, shutdownManager, logger, messager);
+        // This is shared so that we don't ping the same server for every player that is waiting for it to start
+        StartingServer startingServer;
+        boolean playerAddedToWaitingList;
+        do {
+            // The start may end between taking it from the registry and adding the player
+            startingServer = serverRegistry.getStartingServer(originalServerName, () -> new StartingServer(server, configurationLoader, shutdownManager, reachabilityCache, serverRegistry, coordinator, metrics, logger, messager));
             playerAddedToWaitingList = startingServer.addPlayer(player);
-            startingServers.put(originalServerName, startingServer);
-            // TODO: Should we clear the entry from the map once the server is started?
-        }
+        } while (!playerAddedToWaitingList && startingServer.isFinished());
 
         if (playerAddedToWaitingList) {
             Component message = messager.format(MessageType.INFO, "starting.server", new Text(Component.text(originalServerName)));
@@ -107,22 +150,24 @@ public class ConnectionListener {
 
     @Subscribe()
     public void onDisconnect(DisconnectEvent event) {
+        speculativeStarter.onDisconnect(event.getPlayer().getUniqueId());
+        event.getPlayer().getCurrentServer().ifPresent(serverConnection -> preWarmer.recordLeave(serverConnection.getServer()));
         scheduleServerShutdown(event.getPlayer());
     }
 
     @Subscribe()
-    public void onKicked(KickedFromServerEvent event) {
+    public EventTask onKicked(KickedFromServerEvent event) {
         scheduleServerShutdown(event.getPlayer());
-        redirectPlayerToWaitingServerOnKick(event);
+        return redirectPlayerToWaitingServerOnKick(event);
     }
 
-    private void redirectPlayerToWaitingServerOnKick(KickedFromServerEvent event) {
+    private @Nullable EventTask redirectPlayerToWaitingServerOnKick(KickedFromServerEvent event) {
         Optional<RegisteredServer> waitingServerOpt = getWaitingServer();
 
         // If the waiting server is not available or redirection is disabled, disconnect the player
         if (waitingServerOpt.isEmpty() || !configurationLoader.getConfiguration().getRedirectToWaitingServerOnKick()) {
             event.setResult(KickedFromServerEvent.DisconnectPlayer.create(getKickDisconnectMessage(event)));
-            return;
+            return null;
         }
 
         RegisteredServer waitingServer = waitingServerOpt.get();
@@ -130,7 +175,7 @@ public class ConnectionListener {
         // If the player was kicked from the waiting server itself, disconnect them
         if (event.getServer() == waitingServer) {
             event.setResult(KickedFromServerEvent.DisconnectPlayer.create(getKickDisconnectMessage(event)));
-            return;
+            return null;
         }
 
         // Check if the player is already connected to the waiting server
@@ -138,15 +183,22 @@ public class ConnectionListener {
                 .map(serverConnection -> serverConnection.getServer() == waitingServer)
                 .orElse(false);
 
+        scheduleServerShutdown(event.getServer());
+
         if (isConnectedToWaitingServer) {
             // If already on the waiting server, notify with the kick message
             event.setResult(KickedFromServerEvent.Notify.create(getKickDisconnectMessage(event)));
-        } else if (isReachable(waitingServer)) {
-            // Otherwise redirect to the waiting server
-            event.setResult(KickedFromServerEvent.RedirectPlayer.create(waitingServer, getKickRedirectMessage(event)));
+            return null;
         }
 
-        scheduleServerShutdown(event.getServer());
+        CompletableFuture<Void> redirection = reachabilityCache.isReachable(waitingServer).thenAccept(isReachable -> {
+            if (isReachable) {
+                // Otherwise redirect to the waiting server
+                event.setResult(KickedFromServerEvent.RedirectPlayer.create(waitingServer, getKickRedirectMessage(event)));
+            }
+        });
+
+        return resumeWhenComplete(redirection);
     }
 
     private Component getKickDisconnectMessage(KickedFromServerEvent event) {
@@ -179,16 +231,13 @@ public class ConnectionListener {
         return configurationLoader.getConfiguration().getWaitingServerName().flatMap(proxy::getServer);
     }
 
-    private boolean isReachable(RegisteredServer server) {
-        try {
-            // FIXME: This may be blocking the main thread
-            return configurationLoader.getOnlineChecker(server).isRunningNow();
-        } catch (NoSuchElementException exception) {
-            logger.error("Server '{}' does not have its Pterodactyl ID configured in the plugin's configuration", server.getServerInfo().getName(), exception);
-            return false;
-        } catch (IllegalArgumentException exception) {
-            logger.error("The Pterodactyl URL is missing or invalid in the plugin's configuration", exception);
-            return false;
+    /**
+     * Suspend the event until the future completes, unless the decision could be made from the cache.
+     */
+    private static @Nullable EventTask resumeWhenComplete(CompletableFuture<?> future) {
+        if (future.isDone()) {
+            return null;
         }
+        return EventTask.resumeWhenComplete(future);
     }
 }
@@ -0,0 +1,116 @@
+package fr.pickaria.pterodactylpoweraction;
+
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timer wheel holding the idle deadline of each server.
+ * Setting or cancelling a deadline is constant time, and a single repeating task advances the wheel instead of one
+ * scheduled task per server.
+ */
+public class IdleDeadlineWheel {
+    private static final Duration TICK = Duration.ofSeconds(1);
+    private static final int WHEEL_SIZE = 512;
+
+    private final Consumer<RegisteredServer> onExpiry;
+    private final Map<String, Deadline> deadlines = new ConcurrentHashMap<>();
+    private final Set<Deadline>[] slots;
+    private volatile long currentTick = 0;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public IdleDeadlineWheel(Consumer<RegisteredServer> onExpiry) {
+        this.onExpiry = onExpiry;
+        this.slots = new Set[WHEEL_SIZE];
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            slots[i] = ConcurrentHashMap.newKeySet();
+        }
+    }
+
+    /**
+     * Start the task advancing the wheel.
+     */
+    public void start(ProxyServer proxy, Object plugin) {
+        proxy.getScheduler()
+                .buildTask(plugin, this::tick)
+                .repeat(TICK)
+                .schedule();
+    }
+
+    /**
+     * Set the deadline of the server, replacing the previous one.
+     *
+     * @param server The server to stop once the deadline expires
+     * @param delay  The time left before the deadline expires
+     */
+    public void schedule(RegisteredServer server, Duration delay) {
+        long ticks = Math.max(1, (delay.toMillis() + TICK.toMillis() - 1) / TICK.toMillis());
+        deadlines.compute(server.getServerInfo().getName(), (name, previous) -> {
+            if (previous != null) {
+                slots[previous.slot].remove(previous);
+            }
+            // One extra tick so that a concurrent tick cannot skip the slot before the deadline is added to it
+            Deadline deadline = new Deadline(server, currentTick + ticks + 1);
+            slots[deadline.slot].add(deadline);
+            return deadline;
+        });
+    }
+
+    /**
+     * Remove the deadline of the server.
+     *
+     * @return true if the server had a pending deadline
+     */
+    public boolean cancel(String serverName) {
+        Deadline deadline = deadlines.remove(serverName);
+        if (deadline == null) {
+            return false;
+        }
+        slots[deadline.slot].remove(deadline);
+        return true;
+    }
+
+    /**
+     * @return The time left before the deadline of each server expires, sorted by server name
+     */
+    public Map<String, Duration> getPendingDeadlines() {
+        Map<String, Duration> pending = new TreeMap<>();
+        long tick = currentTick;
+        deadlines.forEach((name, deadline) -> pending.put(name, TICK.multipliedBy(Math.max(0, deadline.expiresAt - tick))));
+        return pending;
+    }
+
+    private void tick() {
+        long tick = ++currentTick;
+        Set<Deadline> slot = slots[(int) (tick % WHEEL_SIZE)];
+
+        for (Deadline deadline : slot) {
+            if (deadline.expiresAt > tick) {
+                // Belongs to a later turn of the wheel
+                continue;
+            }
+            slot.remove(deadline);
+            if (deadlines.remove(deadline.server.getServerInfo().getName(), deadline)) {
+                onExpiry.accept(deadline.server);
+            }
+        }
+    }
+
+    private static final class Deadline {
+        private final RegisteredServer server;
+        private final long expiresAt;
+        private final int slot;
+
+        private Deadline(RegisteredServer server, long expiresAt) {
+            this.server = server;
+            this.expiresAt = expiresAt;
+            this.slot = (int) (expiresAt % WHEEL_SIZE);
+        }
+    }
+}
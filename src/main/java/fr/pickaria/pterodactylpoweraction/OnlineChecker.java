@@ -5,5 +5,19 @@ import java.util.concurrent.CompletableFuture;
 public interface OnlineChecker {
     CompletableFuture<Void> waitForRunning();
 
+    /**
+     * Wait until the server is not running anymore.
+     *
+     * @return A future completing once the server is offline, or failing after the maximum ping duration
+     */
+    CompletableFuture<Void> waitForStopped();
+
+    /**
+     * Check the current state of the server without blocking the calling thread.
+     *
+     * @return A future completing with true if the server is running
+     */
+    CompletableFuture<Boolean> checkRunning();
+
     boolean isRunningNow();
 }
@@ -1,9 +1,14 @@
 package fr.pickaria.pterodactylpoweraction;
 
+import fr.pickaria.pterodactylpoweraction.api.RequestPriority;
+
 import java.util.concurrent.CompletableFuture;
 
 public interface PowerActionAPI {
     CompletableFuture<Void> stop(String server);
 
-    CompletableFuture<Void> start(String server);
+    /**
+     * @param priority How urgent the start is, for the backends sharing a rate limit between requests
+     */
+    CompletableFuture<Void> start(String server, RequestPriority priority);
 }
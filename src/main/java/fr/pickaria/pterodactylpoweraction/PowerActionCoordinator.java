@@ -0,0 +1,203 @@
+package fr.pickaria.pterodactylpoweraction;
+
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import fr.pickaria.pterodactylpoweraction.api.RequestPriority;
+import fr.pickaria.pterodactylpoweraction.configuration.ConfigurationLoader;
+import fr.pickaria.pterodactylpoweraction.metrics.Metrics;
+import fr.pickaria.pterodactylpoweraction.metrics.ServerMetrics;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sends the power actions of each server one at a time.
+ * An action stays in flight until the server actually reaches the state it requested, not only until the panel
+ * acknowledged it, as the panel drops a signal sent while the server is still starting or stopping.
+ * A request identical to the one in flight joins it, a conflicting request waits for the one in flight to be over
+ * before being sent, and a request the known state makes redundant is skipped.
+ */
+public class PowerActionCoordinator {
+    private final ProxyServer proxy;
+    private final ConfigurationLoader configurationLoader;
+    private final ReachabilityCache reachabilityCache;
+    private final ServerRegistry serverRegistry;
+    private final Metrics metrics;
+    private final Logger logger;
+    private final Map<String, Action> actions = new ConcurrentHashMap<>();
+
+    public PowerActionCoordinator(ProxyServer proxy, ConfigurationLoader configurationLoader, ReachabilityCache reachabilityCache, ServerRegistry serverRegistry, Metrics metrics, Logger logger) {
+        this.proxy = proxy;
+        this.configurationLoader = configurationLoader;
+        this.reachabilityCache = reachabilityCache;
+        this.serverRegistry = serverRegistry;
+        this.metrics = metrics;
+        this.logger = logger;
+    }
+
+    /**
+     * @param priority How urgent the start is, an identical start in flight keeps its own
+     * @return A future completing once the panel acknowledged the signal, or right away if it was skipped
+     */
+    public CompletableFuture<Result> start(String server, RequestPriority priority) {
+        return submit(server, Signal.START, priority);
+    }
+
+    /**
+     * @return A future completing once the panel acknowledged the signal, or right away if it was skipped
+     */
+    public CompletableFuture<Result> stop(String server) {
+        // Nobody is waiting on a server to stop
+        return submit(server, Signal.STOP, RequestPriority.HOUSEKEEPING);
+    }
+
+    /**
+     * @return A future completing once the server has reached the state requested by its action in flight, or right
+     * away if there is none, never completing exceptionally
+     */
+    public CompletableFuture<Void> awaitSettled(String serverName) {
+        Action action = actions.get(serverName);
+        return action == null ? CompletableFuture.completedFuture(null) : action.settled;
+    }
+
+    private CompletableFuture<Result> submit(String serverName, Signal signal, RequestPriority priority) {
+        while (true) {
+            Action current = actions.get(serverName);
+            boolean isInFlight = current != null && !current.settled.isDone();
+            if (isInFlight && current.signal == signal) {
+                // Join the identical action already in flight
+                return current.future;
+            }
+            if (!isInFlight && isRedundant(serverName, signal)) {
+                logger.debug("Skipping the {} of server '{}' as it is already in the requested state.", signal, serverName);
+                return CompletableFuture.completedFuture(Result.SKIPPED);
+            }
+
+            // The action is registered before its request is sent, so that the request is not built under the map's lock
+            CompletableFuture<Void> acknowledged = new CompletableFuture<>();
+            Action action = newAction(serverName, signal, acknowledged);
+            boolean isRegistered = current == null
+                    ? actions.putIfAbsent(serverName, action) == null
+                    : actions.replace(serverName, current, action);
+            if (!isRegistered) {
+                // Another request got registered meanwhile, join or wait for it instead
+                continue;
+            }
+            action.settled.whenComplete((result, throwable) -> actions.remove(serverName, action));
+
+            CompletableFuture<Void> sent;
+            if (isInFlight) {
+                // Wait for the server to settle in the state requested by the conflicting action before sending ours
+                logger.debug("Delaying the {} of server '{}' until its {} is over.", signal, serverName, current.signal);
+                sent = current.settled.thenCompose(ignored -> send(serverName, signal, priority));
+            } else {
+                sent = send(serverName, signal, priority);
+            }
+            sent.whenComplete((result, throwable) -> {
+                if (throwable == null) {
+                    acknowledged.complete(null);
+                } else {
+                    acknowledged.completeExceptionally(throwable);
+                }
+            });
+            return action.future;
+        }
+    }
+
+    /**
+     * @param future The future of the request, completing once the panel acknowledged it
+     */
+    private Action newAction(String serverName, Signal signal, CompletableFuture<Void> future) {
+        // A signal that could not be sent has nothing to wait for
+        CompletableFuture<Void> settled = future
+                .handle((result, throwable) -> throwable == null)
+                .thenCompose(isSent -> isSent ? waitForSettled(serverName, signal) : CompletableFuture.completedFuture(null));
+        return new Action(signal, future.thenApply(ignored -> Result.SENT), settled);
+    }
+
+    private CompletableFuture<Void> send(String serverName, Signal signal, RequestPriority priority) {
+        ServerMetrics serverMetrics = metrics.getServer(serverName);
+        long sentAt = System.nanoTime();
+        CompletableFuture<Void> future;
+        try {
+            PowerActionAPI api = configurationLoader.getAPI();
+            future = signal == Signal.START ? api.start(serverName, priority) : api.stop(serverName);
+        } catch (RuntimeException exception) {
+            future = CompletableFuture.failedFuture(exception);
+        }
+
+        return future.whenComplete((result, throwable) -> {
+            if (signal == Signal.START) {
+                serverMetrics.recordStart(System.nanoTime() - sentAt, throwable == null);
+            } else {
+                serverMetrics.recordStop(System.nanoTime() - sentAt, throwable == null);
+            }
+        });
+    }
+
+    /**
+     * Wait for the server to reach the state requested by the signal, ignoring failures as the next signal should be
+     * sent anyway.
+     * The boot time of a start is recorded here, as every start acknowledged by the panel settles once.
+     */
+    private CompletableFuture<Void> waitForSettled(String serverName, Signal signal) {
+        long acknowledgedAt = System.nanoTime();
+        Optional<RegisteredServer> server = proxy.getServer(serverName);
+        if (server.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        try {
+            OnlineChecker onlineChecker = configurationLoader.getOnlineChecker(server.get());
+            CompletableFuture<Void> settled = signal == Signal.START ? onlineChecker.waitForRunning() : onlineChecker.waitForStopped();
+            return settled.handle((result, throwable) -> {
+                if (throwable == null && signal == Signal.START) {
+                    configurationLoader.getPingStatistics().get(serverName).recordBootTime(Duration.ofNanos(System.nanoTime() - acknowledgedAt));
+                }
+                return null;
+            });
+        } catch (RuntimeException exception) {
+            return CompletableFuture.completedFuture(null);
+        }
+    }
+
+    /**
+     * A start is redundant if the server was recently seen answering, a stop if the server is known to be offline.
+     * An unreachable server may still be booting outside of the plugin, so it is not enough to skip a stop.
+     */
+    private boolean isRedundant(String serverName, Signal signal) {
+        if (signal == Signal.STOP) {
+            return serverRegistry.getState(serverName) == ServerState.OFFLINE;
+        }
+        return proxy.getServer(serverName)
+                .flatMap(reachabilityCache::getIfFresh)
+                .orElse(false);
+    }
+
+    public enum Result {
+        /**
+         * The signal was sent to the panel, by this request or by the identical one it joined.
+         */
+        SENT,
+        /**
+         * The signal was not sent, as the server was recently seen in the requested state.
+         */
+        SKIPPED,
+    }
+
+    private enum Signal {
+        START,
+        STOP,
+    }
+
+    /**
+     * @param future  Completes once the panel acknowledged the signal
+     * @param settled Completes once the server reached the requested state, or gave up on it, never exceptionally
+     */
+    private record Action(Signal signal, CompletableFuture<Result> future, CompletableFuture<Void> settled) {
+    }
+}
@@ -0,0 +1,149 @@
+package fr.pickaria.pterodactylpoweraction;
+
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import fr.pickaria.pterodactylpoweraction.api.RequestPriority;
+import fr.pickaria.pterodactylpoweraction.configuration.ConfigurationLoader;
+import fr.pickaria.pterodactylpoweraction.demand.DemandHistory;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Starts the servers ahead of the hours at which players usually join them, so that they don't wait for a cold boot.
+ * Servers nobody joins after being pre-started are stopped after a shorter idle timeout.
+ */
+public class PreWarmer {
+    private static final Duration CHECK_INTERVAL = Duration.ofMinutes(1);
+    private static final Duration FLUSH_INTERVAL = Duration.ofMinutes(1);
+    /**
+     * Share of the past weeks in which the server must have had players at that hour to be pre-started.
+     */
+    private static final double DEMAND_THRESHOLD = 0.5;
+    /**
+     * Time before a server that has been pre-started can be pre-started again, so that it is not started every minute
+     * once it has been stopped for being idle.
+     */
+    private static final Duration COOLDOWN = Duration.ofHours(1);
+
+    private final ProxyServer proxy;
+    private final ConfigurationLoader configurationLoader;
+    private final ShutdownManager shutdownManager;
+    private final PowerActionCoordinator coordinator;
+    private final ReachabilityCache reachabilityCache;
+    private final ServerRegistry serverRegistry;
+    private final DemandHistory demandHistory;
+    private final Logger logger;
+    private final Map<String, Long> preWarmedAt = new ConcurrentHashMap<>();
+
+    public PreWarmer(ProxyServer proxy, ConfigurationLoader configurationLoader, ShutdownManager shutdownManager, PowerActionCoordinator coordinator, ReachabilityCache reachabilityCache, ServerRegistry serverRegistry, DemandHistory demandHistory, Logger logger) {
+        this.proxy = proxy;
+        this.configurationLoader = configurationLoader;
+        this.shutdownManager = shutdownManager;
+        this.coordinator = coordinator;
+        this.reachabilityCache = reachabilityCache;
+        this.serverRegistry = serverRegistry;
+        this.demandHistory = demandHistory;
+        this.logger = logger;
+    }
+
+    /**
+     * Load the history, then start the tasks saving it and pre-starting the servers.
+     */
+    public void initialize(Object plugin) {
+        demandHistory.load();
+
+        proxy.getScheduler()
+                .buildTask(plugin, demandHistory::flush)
+                .repeat(FLUSH_INTERVAL)
+                .schedule();
+
+        proxy.getScheduler()
+                .buildTask(plugin, this::checkDemand)
+                .repeat(CHECK_INTERVAL)
+                .schedule();
+    }
+
+    public void recordJoin(RegisteredServer server) {
+        demandHistory.recordJoin(getServerName(server));
+    }
+
+    public void recordLeave(RegisteredServer server) {
+        demandHistory.recordLeave(getServerName(server));
+    }
+
+    /**
+     * Save the events that have not been written yet.
+     */
+    public void close() {
+        demandHistory.flush();
+    }
+
+    private void checkDemand() {
+        Configuration configuration = configurationLoader.getConfiguration();
+        if (!configuration.isPredictiveStartEnabled()) {
+            return;
+        }
+
+        Optional<String> waitingServerName = configuration.getWaitingServerName();
+        Instant predictedAt = Instant.now().plus(configuration.getPredictiveStartLeadTime());
+
+        for (String serverName : configuration.getAllServers()) {
+            if (waitingServerName.isPresent() && waitingServerName.get().equals(serverName)) {
+                continue;
+            }
+            if (serverRegistry.getState(serverName) != ServerState.OFFLINE || isCoolingDown(serverName)) {
+                continue;
+            }
+            if (demandHistory.getProfile(serverName).getDemand(predictedAt) < DEMAND_THRESHOLD) {
+                continue;
+            }
+
+            proxy.getServer(serverName).ifPresent(server -> reachabilityCache.isReachable(server).thenAccept(isReachable -> {
+                if (!isReachable) {
+                    preWarm(server, configuration.getPredictiveStartIdleTimeout());
+                }
+            }));
+        }
+    }
+
+    private void preWarm(RegisteredServer server, Duration idleTimeout) {
+        String serverName = getServerName(server);
+        // Players may have asked for the server in the meantime
+        if (!serverRegistry.transition(serverName, ServerState.OFFLINE, ServerState.STARTING)) {
+            return;
+        }
+
+        logger.info("Starting server '{}' ahead of the players who usually join it at this time.", serverName);
+        preWarmedAt.put(serverName, System.nanoTime());
+
+        coordinator.start(serverName, RequestPriority.BACKGROUND)
+                .thenCompose(ignored -> configurationLoader.getOnlineChecker(server).waitForRunning())
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        logger.warn("Could not start server '{}' ahead of the players", serverName, throwable);
+                        serverRegistry.transition(serverName, ServerState.STARTING, ServerState.OFFLINE);
+                        return;
+                    }
+
+                    serverRegistry.transition(serverName, ServerState.STARTING, ServerState.RUNNING);
+                    reachabilityCache.update(server, true);
+                    if (server.getPlayersConnected().isEmpty()) {
+                        shutdownManager.scheduleShutdown(server, idleTimeout);
+                    }
+                });
+    }
+
+    private boolean isCoolingDown(String serverName) {
+        Long startedAt = preWarmedAt.get(serverName);
+        return startedAt != null && System.nanoTime() - startedAt < COOLDOWN.toNanos();
+    }
+
+    private String getServerName(RegisteredServer server) {
+        return server.getServerInfo().getName();
+    }
+}
@@ -11,7 +11,13 @@ import com.velocitypowered.api.plugin.annotation.DataDirectory;
 import com.velocitypowered.api.proxy.ProxyServer;
 import fr.pickaria.pterodactylpoweraction.commands.PterodactylPowerActionCommand;
 import fr.pickaria.pterodactylpoweraction.configuration.ConfigurationLoader;
+import fr.pickaria.pterodactylpoweraction.configuration.ConfigurationWatcher;
 import fr.pickaria.pterodactylpoweraction.configuration.ShutdownBehaviour;
+import fr.pickaria.pterodactylpoweraction.demand.DemandHistory;
+import fr.pickaria.pterodactylpoweraction.demand.LastServerStore;
+import fr.pickaria.pterodactylpoweraction.executor.PluginExecutors;
+import fr.pickaria.pterodactylpoweraction.metrics.Metrics;
+import fr.pickaria.pterodactylpoweraction.metrics.MetricsServer;
 import net.kyori.adventure.key.Key;
 import net.kyori.adventure.translation.GlobalTranslator;
 import net.kyori.adventure.translation.TranslationRegistry;
@@ -34,19 +40,41 @@ public class PterodactylPowerAction {
     private final ProxyServer proxy;
     private final Logger logger;
     private final ConfigurationLoader configurationLoader;
+    private final ConfigurationWatcher configurationWatcher;
     private final ShutdownManager shutdownManager;
+    private final ReachabilityCache reachabilityCache;
+    private final PowerActionCoordinator coordinator;
+    private final PreWarmer preWarmer;
+    private final WarmPoolManager warmPoolManager;
+    private final SpeculativeStarter speculativeStarter;
+    private final ServerRegistry serverRegistry = new ServerRegistry();
+    private final PluginExecutors executors = new PluginExecutors();
+    private final Metrics metrics = new Metrics(serverRegistry, executors);
+    private final MetricsServer metricsServer;
 
     @Inject
     public PterodactylPowerAction(ProxyServer server, Logger logger, @DataDirectory Path dataDirectory) {
         this.proxy = server;
         this.logger = logger;
-        this.configurationLoader = new ConfigurationLoader(logger, dataDirectory);
-        this.shutdownManager = new ShutdownManager(proxy, this, configurationLoader, logger);
+        this.configurationLoader = new ConfigurationLoader(logger, dataDirectory, executors, metrics);
+        this.configurationWatcher = new ConfigurationWatcher(configurationLoader, logger);
+        this.reachabilityCache = new ReachabilityCache(configurationLoader, serverRegistry, metrics, logger);
+        this.metricsServer = new MetricsServer(metrics, logger);
+        this.coordinator = new PowerActionCoordinator(proxy, configurationLoader, reachabilityCache, serverRegistry, metrics, logger);
+        this.warmPoolManager = new WarmPoolManager(proxy, configurationLoader, coordinator, reachabilityCache, serverRegistry, logger);
+        this.shutdownManager = new ShutdownManager(proxy, this, configurationLoader, reachabilityCache, serverRegistry, coordinator, warmPoolManager, logger);
+        DemandHistory demandHistory = new DemandHistory(dataDirectory.resolve("history"), logger);
+        this.preWarmer = new PreWarmer(proxy, configurationLoader, shutdownManager, coordinator, reachabilityCache, serverRegistry, demandHistory, logger);
+        LastServerStore lastServerStore = new LastServerStore(dataDirectory.resolve("last_servers.bin"), logger);
+        this.speculativeStarter = new SpeculativeStarter(proxy, configurationLoader, shutdownManager, coordinator, reachabilityCache, serverRegistry, warmPoolManager, lastServerStore, logger);
     }
 
     @Subscribe
     public void onProxyInitialization(ProxyInitializeEvent event) {
         this.initializeCommand();
+        if (executors.usesVirtualThreads()) {
+            logger.info("Running the blocking tasks on virtual threads");
+        }
 
         initializeTranslator(
                 ResourceBundle.getBundle("PterodactylPowerAction.Bundle", Locale.FRENCH, UTF8ResourceBundleControl.get()),
@@ -55,7 +83,7 @@ public class PterodactylPowerAction {
         );
 
         try {
-            ConnectionListener listener = new ConnectionListener(configurationLoader, proxy, logger, shutdownManager);
+            ConnectionListener listener = new ConnectionListener(configurationLoader, proxy, logger, shutdownManager, reachabilityCache, serverRegistry, coordinator, preWarmer, speculativeStarter, metrics);
             proxy.getEventManager().register(this, listener);
         } catch (NoSuchElementException e) {
             logger.error("Error loading listener", e);
@@ -63,16 +91,27 @@ public class PterodactylPowerAction {
             logger.error("Cannot load the configuration file", e);
         }
 
-        boolean shouldStartWaitingServer = configurationLoader.getConfiguration().shouldStartWaitingServer();
-        if (shouldStartWaitingServer) {
-            startWaitingServer();
-        }
+        reachabilityCache.scheduleRefresh(proxy, this);
+        shutdownManager.initialize();
+        preWarmer.initialize(this);
+        speculativeStarter.initialize(this);
+        // Also starts the waiting server if configured to
+        warmPoolManager.initialize(this);
+        configurationWatcher.initialize();
+        metricsServer.initialize(configurationLoader.getConfiguration());
     }
 
     @Subscribe
     public void onProxyShutdown(ProxyShutdownEvent event) {
         ShutdownBehaviour shutdownBehaviour = configurationLoader.getConfiguration().getShutdownBehaviour();
-        shutdownManager.shutdownAll(shutdownBehaviour, Duration.ZERO);
+        // Wait for the requests to be sent before the HTTP client is closed and the JVM exits
+        shutdownManager.shutdownAll(shutdownBehaviour, Duration.ZERO).join();
+        preWarmer.close();
+        speculativeStarter.close();
+        configurationWatcher.close();
+        metricsServer.close();
+        configurationLoader.close();
+        executors.close();
     }
 
     private void initializeTranslator(ResourceBundle... bundles) {
@@ -86,20 +125,8 @@ public class PterodactylPowerAction {
 
     private void initializeCommand() {
         CommandManager commandManager = proxy.getCommandManager();
-        PterodactylPowerActionCommand pterodactylPowerActionCommand = new PterodactylPowerActionCommand(proxy, logger, configurationLoader, shutdownManager);
+        PterodactylPowerActionCommand pterodactylPowerActionCommand = new PterodactylPowerActionCommand(proxy, logger, configurationLoader, shutdownManager, serverRegistry);
         BrigadierCommand commandToRegister = pterodactylPowerActionCommand.createBrigadierCommand();
         commandManager.register(pterodactylPowerActionCommand.getCommandMeta(commandManager, this), commandToRegister);
     }
-
-    private void startWaitingServer() {
-        configurationLoader.getConfiguration().getWaitingServerName()
-                .flatMap(proxy::getServer)
-                .ifPresent(server -> {
-                    OnlineChecker onlineChecker = configurationLoader.getOnlineChecker(server);
-                    if (!onlineChecker.isRunningNow()) {
-                        PowerActionAPI api = configurationLoader.getAPI();
-                        api.start(server.getServerInfo().getName());
-                    }
-                });
-    }
 }
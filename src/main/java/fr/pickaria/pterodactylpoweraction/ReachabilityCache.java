@@ -0,0 +1,189 @@
+package fr.pickaria.pterodactylpoweraction;
+
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import fr.pickaria.pterodactylpoweraction.configuration.ConfigurationLoader;
+import fr.pickaria.pterodactylpoweraction.metrics.Metrics;
+import fr.pickaria.pterodactylpoweraction.metrics.ServerMetrics;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers whether each server answered its last reachability probe, so event handlers can decide where to send a
+ * player without waiting on the network.
+ * Entries that are still being read are refreshed in the background before they expire, and concurrent probes of the
+ * same server share a single request.
+ */
+public class ReachabilityCache {
+    private static final Duration FRESHNESS = Duration.ofSeconds(5);
+    private static final Duration REFRESH_INTERVAL = Duration.ofSeconds(2);
+    private static final Duration IDLE_EXPIRY = Duration.ofMinutes(5);
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(5);
+
+    private final ConfigurationLoader configurationLoader;
+    private final ServerRegistry serverRegistry;
+    private final Metrics metrics;
+    private final Logger logger;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Boolean>> probes = new ConcurrentHashMap<>();
+
+    public ReachabilityCache(ConfigurationLoader configurationLoader, ServerRegistry serverRegistry, Metrics metrics, Logger logger) {
+        this.configurationLoader = configurationLoader;
+        this.serverRegistry = serverRegistry;
+        this.metrics = metrics;
+        this.logger = logger;
+    }
+
+    /**
+     * Start the task refreshing the entries that have been read recently.
+     */
+    public void scheduleRefresh(ProxyServer proxy, Object plugin) {
+        proxy.getScheduler()
+                .buildTask(plugin, this::refreshEntries)
+                .repeat(REFRESH_INTERVAL)
+                .schedule();
+    }
+
+    /**
+     * Read the last known state of the server without probing it.
+     *
+     * @param server The server to look up
+     * @return The cached state, or empty if the server has not been probed recently
+     */
+    public Optional<Boolean> getIfFresh(RegisteredServer server) {
+        Entry entry = entries.get(getServerName(server));
+        if (entry == null || entry.age() > FRESHNESS.toNanos()) {
+            return Optional.empty();
+        }
+        entry.lastReadAt = System.nanoTime();
+        return Optional.of(entry.reachable);
+    }
+
+    /**
+     * Get the state of the server, probing it only if the cached value is missing or stale.
+     * The returned future is already completed when the value comes from the cache.
+     *
+     * @param server The server to look up
+     * @return A future completing with true if the server is reachable
+     */
+    public CompletableFuture<Boolean> isReachable(RegisteredServer server) {
+        return getIfFresh(server)
+                .map(CompletableFuture::completedFuture)
+                .orElseGet(() -> refresh(server));
+    }
+
+    /**
+     * Probe the server now, joining the probe that is already in flight if there is one.
+     *
+     * @param server The server to probe
+     * @return A future completing with true if the server is reachable, never completing exceptionally
+     */
+    public CompletableFuture<Boolean> refresh(RegisteredServer server) {
+        String serverName = getServerName(server);
+        CompletableFuture<Boolean> promise = new CompletableFuture<>();
+        CompletableFuture<Boolean> inFlight = probes.putIfAbsent(serverName, promise);
+        if (inFlight != null) {
+            return inFlight;
+        }
+
+        ServerMetrics serverMetrics = metrics.getServer(serverName);
+        long probedAt = System.nanoTime();
+        probe(server).whenComplete((reachable, throwable) -> {
+            serverMetrics.recordProbe(System.nanoTime() - probedAt);
+            boolean isReachable = throwable == null && reachable;
+            update(server, isReachable);
+            probes.remove(serverName, promise);
+            promise.complete(isReachable);
+        });
+
+        return promise;
+    }
+
+    /**
+     * Record a state observed elsewhere, for instance once a server finished starting.
+     */
+    public void update(RegisteredServer server, boolean reachable) {
+        serverRegistry.observe(getServerName(server), reachable);
+        entries.compute(getServerName(server), (name, previous) -> {
+            Entry entry = new Entry(server, reachable);
+            if (previous != null) {
+                entry.lastReadAt = previous.lastReadAt;
+            }
+            return entry;
+        });
+    }
+
+    /**
+     * Forget the state of the server, the next read will probe it again.
+     */
+    public void invalidate(RegisteredServer server) {
+        entries.remove(getServerName(server));
+    }
+
+    private CompletableFuture<Boolean> probe(RegisteredServer server) {
+        try {
+            return configurationLoader.getOnlineChecker(server)
+                    .checkRunning()
+                    .completeOnTimeout(false, PROBE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                    .exceptionally(throwable -> {
+                        logProbeError(server, throwable);
+                        return false;
+                    });
+        } catch (RuntimeException exception) {
+            logProbeError(server, exception);
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    private void logProbeError(RegisteredServer server, Throwable throwable) {
+        Throwable cause = throwable instanceof CompletionException && throwable.getCause() != null ? throwable.getCause() : throwable;
+        if (cause instanceof NoSuchElementException) {
+            logger.error("Server '{}' does not have its Pterodactyl ID configured in the plugin's configuration", getServerName(server), cause);
+        } else if (cause instanceof IllegalArgumentException) {
+            logger.error("The Pterodactyl URL is missing or invalid in the plugin's configuration", cause);
+        } else {
+            logger.debug("Could not determine if server '{}' is reachable", getServerName(server), cause);
+        }
+    }
+
+    private void refreshEntries() {
+        long now = System.nanoTime();
+        for (Entry entry : entries.values()) {
+            if (now - entry.lastReadAt > IDLE_EXPIRY.toNanos()) {
+                // Nobody asked for this server in a while, stop refreshing it
+                entries.remove(getServerName(entry.server), entry);
+            } else if (entry.age() > FRESHNESS.toNanos() - REFRESH_INTERVAL.toNanos()) {
+                // Refresh ahead of expiry so that readers keep hitting the cache
+                refresh(entry.server);
+            }
+        }
+    }
+
+    private String getServerName(RegisteredServer server) {
+        return server.getServerInfo().getName();
+    }
+
+    private static final class Entry {
+        private final RegisteredServer server;
+        private final boolean reachable;
+        private final long checkedAt = System.nanoTime();
+        private volatile long lastReadAt = checkedAt;
+
+        private Entry(RegisteredServer server, boolean reachable) {
+            this.server = server;
+            this.reachable = reachable;
+        }
+
+        private long age() {
+            return System.nanoTime() - checkedAt;
+        }
+    }
+}
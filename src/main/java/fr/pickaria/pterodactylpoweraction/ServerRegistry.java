@@ -0,0 +1,93 @@
+package fr.pickaria.pterodactylpoweraction;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Single source of truth for the state of every server.
+ * Each server holds its {@link ServerState} along with the resources attached to it, and every change is an atomic
+ * compare-and-set, so concurrent event handlers never lose an update.
+ */
+public class ServerRegistry {
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    public ServerState getState(String serverName) {
+        Entry entry = entries.get(serverName);
+        return entry == null ? ServerState.OFFLINE : entry.state.get();
+    }
+
+    /**
+     * Move the server from the expected state to the next one.
+     *
+     * @return true if the server was in the expected state and has been moved
+     */
+    public boolean transition(String serverName, ServerState expected, ServerState next) {
+        assert expected.canTransitionTo(next);
+        return getEntry(serverName).state.compareAndSet(expected, next);
+    }
+
+    /**
+     * Move the server to the next state, from whatever state it currently is in, if the transition is allowed.
+     *
+     * @return true if the server has been moved
+     */
+    public boolean advance(String serverName, ServerState next) {
+        AtomicReference<ServerState> state = getEntry(serverName).state;
+        ServerState current;
+        do {
+            current = state.get();
+            if (!current.canTransitionTo(next)) {
+                return false;
+            }
+        } while (!state.compareAndSet(current, next));
+        return true;
+    }
+
+    /**
+     * Record the result of a reachability probe.
+     * Servers that answer are known to be running, servers that stopped answering are known to be offline, unless the
+     * plugin is the one starting them.
+     */
+    public void observe(String serverName, boolean reachable) {
+        if (reachable) {
+            transition(serverName, ServerState.OFFLINE, ServerState.RUNNING);
+        } else if (getState(serverName) != ServerState.STARTING) {
+            advance(serverName, ServerState.OFFLINE);
+        }
+    }
+
+    /**
+     * Get the server being started, creating it if no start is in progress.
+     */
+    public StartingServer getStartingServer(String serverName, Supplier<StartingServer> factory) {
+        return getEntry(serverName).startingServer.updateAndGet(current -> current == null ? factory.get() : current);
+    }
+
+    /**
+     * Forget the server once it has started, along with the players who were waiting for it.
+     */
+    public void releaseStartingServer(String serverName, StartingServer startingServer) {
+        getEntry(serverName).startingServer.compareAndSet(startingServer, null);
+    }
+
+    /**
+     * @return A sorted snapshot of the state of every known server
+     */
+    public Map<String, ServerState> getStates() {
+        Map<String, ServerState> states = new TreeMap<>();
+        entries.forEach((name, entry) -> states.put(name, entry.state.get()));
+        return states;
+    }
+
+    private Entry getEntry(String serverName) {
+        return entries.computeIfAbsent(serverName, name -> new Entry());
+    }
+
+    private static final class Entry {
+        private final AtomicReference<ServerState> state = new AtomicReference<>(ServerState.OFFLINE);
+        private final AtomicReference<StartingServer> startingServer = new AtomicReference<>();
+    }
+}
@@ -0,0 +1,24 @@
+package fr.pickaria.pterodactylpoweraction;
+
+/**
+ * Lifecycle of a server as seen by the plugin.
+ */
+public enum ServerState {
+    OFFLINE,
+    STARTING,
+    RUNNING,
+    /**
+     * The server is empty and will be stopped once its shutdown delay expires, unless a player joins it meanwhile.
+     */
+    DRAINING,
+    STOPPING;
+
+    public boolean canTransitionTo(ServerState next) {
+        return switch (this) {
+            case OFFLINE -> next == STARTING || next == RUNNING;
+            case STARTING -> next == RUNNING || next == OFFLINE;
+            case RUNNING, DRAINING -> next != this;
+            case STOPPING -> next == OFFLINE || next == STARTING;
+        };
+    }
+}
@@ -2,35 +2,60 @@ package fr.pickaria.pterodactylpoweraction;
 
 import com.velocitypowered.api.proxy.ProxyServer;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
-import com.velocitypowered.api.scheduler.ScheduledTask;
-import com.velocitypowered.api.scheduler.Scheduler;
 import fr.pickaria.pterodactylpoweraction.configuration.ConfigurationLoader;
 import fr.pickaria.pterodactylpoweraction.configuration.ShutdownBehaviour;
 import org.slf4j.Logger;
 
 import java.time.Duration;
-import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class ShutdownManager {
+    private static final Duration IDLE_CHECK_INTERVAL = Duration.ofSeconds(10);
     private static ShutdownManager instance;
     private final ProxyServer proxy;
     private final PterodactylPowerAction plugin;
     private final ConfigurationLoader configurationLoader;
-    private final Map<String, ScheduledTask> shutdownTasks = new HashMap<>();
+    private final ReachabilityCache reachabilityCache;
+    private final ServerRegistry serverRegistry;
+    private final PowerActionCoordinator coordinator;
+    private final WarmPoolManager warmPools;
+    private final IdleDeadlineWheel deadlineWheel = new IdleDeadlineWheel(this::stopNowIfEmpty);
+    /**
+     * When each server with a pending shutdown became empty, from {@link System#nanoTime()}
+     */
+    private final Map<String, Long> emptySince = new ConcurrentHashMap<>();
     private final Logger logger;
 
-    public ShutdownManager(ProxyServer proxy, PterodactylPowerAction plugin, ConfigurationLoader configurationLoader, Logger logger) {
+    public ShutdownManager(ProxyServer proxy, PterodactylPowerAction plugin, ConfigurationLoader configurationLoader, ReachabilityCache reachabilityCache, ServerRegistry serverRegistry, PowerActionCoordinator coordinator, WarmPoolManager warmPools, Logger logger) {
         assert instance == null; // Simply to make sure we only instantiate this class once
         instance = this;
 
         this.proxy = proxy;
         this.plugin = plugin;
         this.configurationLoader = configurationLoader;
+        this.reachabilityCache = reachabilityCache;
+        this.serverRegistry = serverRegistry;
+        this.coordinator = coordinator;
+        this.warmPools = warmPools;
         this.logger = logger;
     }
 
+    /**
+     * Start the tasks checking the idle deadlines and the resource usage of the servers.
+     */
+    public void initialize() {
+        deadlineWheel.start(proxy, plugin);
+        proxy.getScheduler()
+                .buildTask(plugin, this::stopIdleServers)
+                .repeat(IDLE_CHECK_INTERVAL)
+                .schedule();
+    }
+
     /**
      * Start a task that will shut down the server after the configured delay.
      *
@@ -44,27 +69,44 @@ public class ShutdownManager {
         scheduleShutdownTask(server, afterDuration);
     }
 
-    public void shutdownAll(ShutdownBehaviour shutdownBehaviour, Duration afterDuration) {
+    /**
+     * Stop the servers according to the behaviour.
+     * Servers are stopped in parallel, and the returned future completes once each of them has an outcome or the
+     * configured shutdown deadline expired.
+     *
+     * @param shutdownBehaviour Which servers to stop
+     * @param afterDuration     Delay before stopping empty servers, only used by {@link ShutdownBehaviour#SHUTDOWN_EMPTY}
+     * @return A future completing with the outcome of each server stopped right away, never completing exceptionally
+     */
+    public CompletableFuture<Map<String, BulkPowerOperation.Outcome>> shutdownAll(ShutdownBehaviour shutdownBehaviour, Duration afterDuration) {
+        Configuration configuration = configurationLoader.getConfiguration();
+        // The pools keep their minimum number of servers running, the servers beyond it are stopped like the others
+        Set<String> keptRunning = warmPools.getKeptRunning();
+        List<String> serverNames = configuration.getAllServers().stream()
+                .filter(serverName -> !keptRunning.contains(serverName))
+                .toList();
+
         switch (shutdownBehaviour) {
             case SHUTDOWN_EMPTY: {
-                Configuration configuration = configurationLoader.getConfiguration();
+                if (afterDuration.isZero()) {
+                    List<String> emptyServerNames = serverNames.stream()
+                            .filter(serverName -> proxy.getServer(serverName).map(this::isServerEmpty).orElse(true))
+                            .toList();
+                    return stopAll(configuration, emptyServerNames);
+                }
 
-                for (String serverName : configuration.getAllServers()) {
+                for (String serverName : serverNames) {
                     proxy.getServer(serverName)
                             .ifPresent(registeredServer -> scheduleShutdown(registeredServer, afterDuration));
                 }
+                break;
             }
             case SHUTDOWN_ALL: {
-                Configuration configuration = configurationLoader.getConfiguration();
-                PowerActionAPI api = configurationLoader.getAPI();
-
-                for (String serverName : configuration.getAllServers()) {
-                    if (!isWaitingServer(serverName)) {
-                        api.stop(serverName);
-                    }
-                }
+                return stopAll(configuration, serverNames);
             }
         }
+
+        return CompletableFuture.completedFuture(Map.of());
     }
 
     /**
@@ -74,11 +116,18 @@ public class ShutdownManager {
      */
     public void cancelTask(RegisteredServer server) {
         String serverName = getServerName(server);
-        if (shutdownTasks.containsKey(serverName)) {
+        if (deadlineWheel.cancel(serverName)) {
             logger.debug("Cancelling shutdown for server '{}'.", serverName);
-            shutdownTasks.get(serverName).cancel();
-            shutdownTasks.remove(serverName);
         }
+        emptySince.remove(serverName);
+        serverRegistry.transition(serverName, ServerState.DRAINING, ServerState.RUNNING);
+    }
+
+    /**
+     * @return The time left before each server is stopped if it is still empty
+     */
+    public Map<String, Duration> getPendingShutdowns() {
+        return deadlineWheel.getPendingDeadlines();
     }
 
     private boolean isServerEmpty(RegisteredServer server) {
@@ -92,28 +141,87 @@ public class ShutdownManager {
     private void scheduleShutdownTask(RegisteredServer server, Duration delay) {
         String serverName = getServerName(server);
 
-        // Make sure we don't stop the temporary server
-        if (!isWaitingServer(serverName)) {
-            // Cancel the previous task so we don't have conflicting tasks
-            cancelTask(server);
-
+        // Make sure we don't stop the servers keeping their warm pool running, such as the waiting server
+        if (warmPools.canStop(serverName)) {
             logger.debug("Scheduling server '{}' to shutdown in {} seconds if empty.", serverName, delay.getSeconds());
-            Scheduler.TaskBuilder taskBuilder = proxy.getScheduler()
-                    .buildTask(plugin, () -> stopNowIfEmpty(server))
-                    .delay(delay);
-            ScheduledTask scheduledTask = taskBuilder.schedule();
-            shutdownTasks.put(serverName, scheduledTask);
+            // Replaces the previous deadline so we don't have conflicting tasks
+            deadlineWheel.schedule(server, delay);
+            // The other players keep the server running, the deadline still checks whether it is empty then
+            if (!isServerEmpty(server)) {
+                return;
+            }
+            serverRegistry.transition(serverName, ServerState.RUNNING, ServerState.DRAINING);
+
+            // Idle time is counted from the departure of the last player, a join clears it
+            if (emptySince.putIfAbsent(serverName, System.nanoTime()) == null && configurationLoader.getConfiguration().isIdleStopEnabled()) {
+                // Start recording the resource usage now, so that it covers the whole time the server is empty
+                configurationLoader.getResources(serverName);
+            }
         }
     }
 
-    private void stopNowIfEmpty(RegisteredServer server) {
-        if (isServerEmpty(server)) {
-            configurationLoader.getAPI().stop(getServerName(server));
+    /**
+     * Stop the empty servers whose CPU usage stayed low for the configured duration, without waiting for their
+     * deadline. A server still busy while empty, such as one generating its world, keeps running until its deadline.
+     */
+    private void stopIdleServers() {
+        Configuration configuration = configurationLoader.getConfiguration();
+        if (!configuration.isIdleStopEnabled()) {
+            return;
         }
+
+        long now = System.nanoTime();
+        Duration idleDuration = configuration.getIdleDuration();
+        emptySince.forEach((serverName, since) -> {
+            if (now - since < idleDuration.toNanos()) {
+                return;
+            }
+
+            boolean isIdle = configurationLoader.getResources(serverName)
+                    .map(resources -> resources.isQuiet(configuration.getIdleCpuThreshold(), idleDuration))
+                    .orElse(false);
+            if (!isIdle) {
+                return;
+            }
+            // The deadline is only dropped if the server is actually stopped, otherwise it still stops the server later
+            Optional<RegisteredServer> server = proxy.getServer(serverName);
+            if (server.isPresent() && stopNowIfEmpty(server.get())) {
+                deadlineWheel.cancel(serverName);
+                logger.info("Stopped server '{}' early, it has been empty and idle for {} seconds.", serverName, idleDuration.getSeconds());
+            }
+        });
+    }
+
+    /**
+     * @return true if the server is being stopped
+     */
+    private boolean stopNowIfEmpty(RegisteredServer server) {
+        String serverName = getServerName(server);
+
+        // A player may have asked for the server to start again in the meantime
+        // The pool of the server may also have lost another server since the deadline was set
+        if (isServerEmpty(server) && serverRegistry.getState(serverName) != ServerState.STARTING && warmPools.tryRelease(serverName)) {
+            reachabilityCache.invalidate(server);
+            stop(serverName);
+            return true;
+        }
+        return false;
+    }
+
+    private CompletableFuture<Map<String, BulkPowerOperation.Outcome>> stopAll(Configuration configuration, List<String> serverNames) {
+        BulkPowerOperation operation = new BulkPowerOperation("stop", configuration.getShutdownParallelism(), configuration.getShutdownDeadline(), logger);
+        return operation.run(serverNames, this::stop);
     }
 
-    private boolean isWaitingServer(String serverName) {
-        Optional<String> waitingServerName = configurationLoader.getConfiguration().getWaitingServerName();
-        return waitingServerName.isPresent() && serverName.equals(waitingServerName.get());
+    private CompletableFuture<PowerActionCoordinator.Result> stop(String serverName) {
+        // Not guarded by the current state, as a server may have been started outside of the plugin
+        serverRegistry.advance(serverName, ServerState.STOPPING);
+        emptySince.remove(serverName);
+        CompletableFuture<PowerActionCoordinator.Result> sent = coordinator.stop(serverName);
+        // The server keeps stopping for a while after the panel acknowledged the signal
+        sent.handle((result, throwable) -> null)
+                .thenCompose(ignored -> coordinator.awaitSettled(serverName))
+                .thenRun(() -> serverRegistry.transition(serverName, ServerState.STOPPING, ServerState.OFFLINE));
+        return sent;
     }
 }
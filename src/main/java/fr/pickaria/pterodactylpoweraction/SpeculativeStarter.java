@@ -0,0 +1,233 @@
+package fr.pickaria.pterodactylpoweraction;
+
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import fr.pickaria.pterodactylpoweraction.api.RequestPriority;
+import fr.pickaria.pterodactylpoweraction.configuration.ConfigurationLoader;
+import fr.pickaria.pterodactylpoweraction.demand.LastServerStore;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Starts the last server of a player as soon as they have logged in, so that the server boots while the player goes
+ * through the waiting server.
+ * If the player goes somewhere else, the server is stopped again shortly after it has started.
+ */
+public class SpeculativeStarter {
+    private static final Duration FLUSH_INTERVAL = Duration.ofMinutes(1);
+    /**
+     * Idle timeout of a server started for a player who went somewhere else, in case they change their mind.
+     */
+    private static final Duration CANCELLED_IDLE_TIMEOUT = Duration.ofMinutes(1);
+    /**
+     * Time after which a player who has not reached any server is forgotten, longer than a server takes to boot.
+     */
+    private static final Duration SPECULATION_LIFETIME = Duration.ofMinutes(10);
+
+    private final ProxyServer proxy;
+    private final ConfigurationLoader configurationLoader;
+    private final ShutdownManager shutdownManager;
+    private final PowerActionCoordinator coordinator;
+    private final ReachabilityCache reachabilityCache;
+    private final ServerRegistry serverRegistry;
+    private final WarmPoolManager warmPools;
+    private final LastServerStore lastServerStore;
+    private final Logger logger;
+    private final Map<UUID, Speculation> speculations = new ConcurrentHashMap<>();
+
+    public SpeculativeStarter(ProxyServer proxy, ConfigurationLoader configurationLoader, ShutdownManager shutdownManager, PowerActionCoordinator coordinator, ReachabilityCache reachabilityCache, ServerRegistry serverRegistry, WarmPoolManager warmPools, LastServerStore lastServerStore, Logger logger) {
+        this.proxy = proxy;
+        this.configurationLoader = configurationLoader;
+        this.shutdownManager = shutdownManager;
+        this.coordinator = coordinator;
+        this.reachabilityCache = reachabilityCache;
+        this.serverRegistry = serverRegistry;
+        this.warmPools = warmPools;
+        this.lastServerStore = lastServerStore;
+        this.logger = logger;
+    }
+
+    /**
+     * Load the last servers of the players, then start the tasks saving them and forgetting the stale speculations.
+     */
+    public void initialize(Object plugin) {
+        lastServerStore.load();
+
+        proxy.getScheduler()
+                .buildTask(plugin, lastServerStore::flush)
+                .repeat(FLUSH_INTERVAL)
+                .schedule();
+        proxy.getScheduler()
+                .buildTask(plugin, this::expireSpeculations)
+                .repeat(FLUSH_INTERVAL)
+                .schedule();
+    }
+
+    /**
+     * Start the last server of the player if it is not running.
+     * Only the first call has an effect until the speculation of the player ends.
+     */
+    public void speculate(UUID player) {
+        if (!configurationLoader.getConfiguration().isSpeculativeStartEnabled() || speculations.containsKey(player)) {
+            return;
+        }
+
+        Optional<RegisteredServer> lastServer = lastServerStore.get(player).flatMap(proxy::getServer);
+        if (lastServer.isEmpty()) {
+            return;
+        }
+
+        RegisteredServer server = lastServer.get();
+        String serverName = server.getServerInfo().getName();
+        if (reachabilityCache.getIfFresh(server).orElse(false) || warmPools.isPoolMember(serverName)) {
+            // Already running, or kept running anyway
+            return;
+        }
+        if (!serverRegistry.transition(serverName, ServerState.OFFLINE, ServerState.STARTING)) {
+            return;
+        }
+
+        Speculation speculation = new Speculation(server);
+        if (speculations.putIfAbsent(player, speculation) != null) {
+            serverRegistry.transition(serverName, ServerState.STARTING, ServerState.OFFLINE);
+            return;
+        }
+
+        logger.debug("Starting server '{}' for player {} who played on it last.", serverName, player);
+        coordinator.start(serverName, RequestPriority.BACKGROUND)
+                .thenCompose(ignored -> configurationLoader.getOnlineChecker(server).waitForRunning())
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        logger.debug("Could not start server '{}' ahead of player {}", serverName, player, throwable);
+                        serverRegistry.transition(serverName, ServerState.STARTING, ServerState.OFFLINE);
+                        speculations.remove(player, speculation);
+                        return;
+                    }
+
+                    serverRegistry.transition(serverName, ServerState.STARTING, ServerState.RUNNING);
+                    reachabilityCache.update(server, true);
+                    speculation.started(shutdownManager);
+                });
+    }
+
+    /**
+     * Called when the player is about to connect to a server, cancelling the speculation if it is another one.
+     */
+    public void onConnecting(UUID player, RegisteredServer server) {
+        Speculation speculation = speculations.get(player);
+        if (speculation != null && isElsewhere(speculation, server) && speculations.remove(player, speculation)) {
+            speculation.cancel(shutdownManager);
+        }
+    }
+
+    /**
+     * Remember the server as the last one of the player, ending the speculation of the player.
+     */
+    public void onConnected(UUID player, RegisteredServer server) {
+        String serverName = server.getServerInfo().getName();
+        if (!warmPools.isPoolMember(serverName)) {
+            // Players only pass through the waiting server and the servers kept running anyway
+            lastServerStore.put(player, serverName);
+        }
+
+        Speculation speculation = speculations.get(player);
+        if (speculation == null) {
+            return;
+        }
+        if (speculation.server == server) {
+            speculations.remove(player, speculation);
+        } else if (isElsewhere(speculation, server) && speculations.remove(player, speculation)) {
+            speculation.cancel(shutdownManager);
+        }
+    }
+
+    public void onDisconnect(UUID player) {
+        Speculation speculation = speculations.remove(player);
+        if (speculation != null) {
+            speculation.cancel(shutdownManager);
+        }
+    }
+
+    /**
+     * Cancel the speculations of the players who neither reached a server nor disconnected, so that they are not kept
+     * forever if no event ends them.
+     */
+    private void expireSpeculations() {
+        long now = System.nanoTime();
+        speculations.forEach((player, speculation) -> {
+            if (now - speculation.createdAt > SPECULATION_LIFETIME.toNanos() && speculations.remove(player, speculation)) {
+                logger.debug("Forgetting the start of server '{}' for player {} who never reached it.", speculation.server.getServerInfo().getName(), player);
+                speculation.cancel(shutdownManager);
+            }
+        });
+    }
+
+    /**
+     * Save the changes that have not been written yet.
+     */
+    public void close() {
+        lastServerStore.flush();
+    }
+
+    /**
+     * Passing through the waiting server or a server of a warm pool, such as a lobby, does not mean the player went
+     * somewhere else.
+     */
+    private boolean isElsewhere(Speculation speculation, RegisteredServer server) {
+        return speculation.server != server && !warmPools.isPoolMember(server.getServerInfo().getName());
+    }
+
+    private static final class Speculation {
+        private final RegisteredServer server;
+        private final long createdAt = System.nanoTime();
+        private boolean isStarted = false;
+        private boolean isCancelled = false;
+
+        private Speculation(RegisteredServer server) {
+            this.server = server;
+        }
+
+        /**
+         * Give the server its regular idle timeout, so that it does not run forever if the player never joins it.
+         */
+        private void started(ShutdownManager shutdownManager) {
+            boolean isCancelled;
+            synchronized (this) {
+                isStarted = true;
+                isCancelled = this.isCancelled;
+            }
+            if (server.getPlayersConnected().isEmpty()) {
+                if (isCancelled) {
+                    shutdownManager.scheduleShutdown(server, CANCELLED_IDLE_TIMEOUT);
+                } else {
+                    shutdownManager.scheduleShutdown(server);
+                }
+            }
+        }
+
+        /**
+         * The start request cannot be taken back, so the server is stopped shortly after it is up if nobody joined it.
+         */
+        private void cancel(ShutdownManager shutdownManager) {
+            boolean shouldStop;
+            synchronized (this) {
+                isCancelled = true;
+                shouldStop = isStarted;
+            }
+            if (shouldStop) {
+                scheduleShutdown(shutdownManager);
+            }
+        }
+
+        private void scheduleShutdown(ShutdownManager shutdownManager) {
+            if (server.getPlayersConnected().isEmpty()) {
+                shutdownManager.scheduleShutdown(server, CANCELLED_IDLE_TIMEOUT);
+            }
+        }
+    }
+}
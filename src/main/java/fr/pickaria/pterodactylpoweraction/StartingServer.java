@@ -5,7 +5,11 @@ import com.velocitypowered.api.proxy.Player;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
 import fr.pickaria.messager.Messager;
 import fr.pickaria.messager.components.Text;
+import fr.pickaria.pterodactylpoweraction.api.RequestPriority;
 import fr.pickaria.pterodactylpoweraction.configuration.ConfigurationLoader;
+import fr.pickaria.pterodactylpoweraction.metrics.Metrics;
+import fr.pickaria.pterodactylpoweraction.metrics.ServerMetrics;
+import fr.pickaria.pterodactylpoweraction.online.ResourceWindow;
 import net.kyori.adventure.audience.Audience;
 import net.kyori.adventure.audience.ForwardingAudience;
 import net.kyori.adventure.text.Component;
@@ -16,23 +20,35 @@ import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class StartingServer implements ForwardingAudience {
     private final RegisteredServer server;
     private final ConfigurationLoader configurationLoader;
     private final ShutdownManager shutdownManager;
+    private final ReachabilityCache reachabilityCache;
+    private final ServerRegistry serverRegistry;
+    private final PowerActionCoordinator coordinator;
+    private final ServerMetrics metrics;
     private final Set<Player> waitingPlayers = ConcurrentHashMap.newKeySet();
     private final Logger logger;
     private final Messager messager;
-    private final AtomicBoolean isStarting = new AtomicBoolean(false);
+    private boolean isStarting = false;
+    private boolean isFinished = false;
+    private long startedAt;
 
-    public StartingServer(RegisteredServer server, ConfigurationLoader configurationLoader, ShutdownManager shutdownManager, Logger logger, Messager messager) {
+    public StartingServer(RegisteredServer server, ConfigurationLoader configurationLoader, ShutdownManager shutdownManager, ReachabilityCache reachabilityCache, ServerRegistry serverRegistry, PowerActionCoordinator coordinator, Metrics metrics, Logger logger, Messager messager) {
         this.server = server;
         this.configurationLoader = configurationLoader;
         this.shutdownManager = shutdownManager;
+        this.reachabilityCache = reachabilityCache;
+        this.serverRegistry = serverRegistry;
+        this.coordinator = coordinator;
+        this.metrics = metrics.getServer(server.getServerInfo().getName());
         this.logger = logger;
         this.messager = messager;
     }
@@ -42,20 +58,30 @@ public class StartingServer implements ForwardingAudience {
      * If the server is already in a starting state, the player will be redirected alongside the other waiting players.
      *
      * @param player Player to add to the waiting room
-     * @return `true` if the player has been added to the waiting list
+     * @return `true` if the player has been added to the waiting list, `false` if they were already waiting or if this
+     * start is over, see {@link #isFinished()}
      */
-    public boolean addPlayer(Player player) {
+    public synchronized boolean addPlayer(Player player) {
+        // Released from the registry, starting again from here would start the server behind its back
+        if (isFinished) {
+            return false;
+        }
+
         boolean added = waitingPlayers.add(player);
 
-        if (isStarting.compareAndSet(false, true)) {
-            String serverName = server.getServerInfo().getName();
-            configurationLoader.getAPI().start(serverName).whenComplete((result, exception) -> {
+        if (!isStarting) {
+            isStarting = true;
+            startedAt = System.nanoTime();
+            String serverName = getServerName();
+            serverRegistry.advance(serverName, ServerState.STARTING);
+            // Waiting for the server is blocking, keep it off the panel client's threads
+            coordinator.start(serverName, RequestPriority.PLAYER).whenCompleteAsync((result, exception) -> {
                 if (exception == null) {
                     pingUntilUpAndRedirectPlayers();
                 } else {
-                    informError(exception);
+                    informError(exception, finish(ServerState.OFFLINE));
                 }
-            });
+            }, configurationLoader.getExecutors().blocking());
         }
 
         return added;
@@ -66,40 +92,96 @@ public class StartingServer implements ForwardingAudience {
 
         try {
             waitForServer();
+        } catch (CompletionException | CancellationException | ExecutionException | InterruptedException exception) {
+            informError(exception, finish(ServerState.OFFLINE));
+            return;
+        }
 
-            for (Player player : waitingPlayers) {
-                if (player.isActive()) {
-                    hasRedirectedAtLeastOnePlayer = redirectPlayer(player);
-                }
+        metrics.recordColdStart(System.nanoTime() - startedAt);
+        reachabilityCache.update(server, true);
+        for (Player player : finish(ServerState.RUNNING)) {
+            if (player.isActive()) {
+                hasRedirectedAtLeastOnePlayer = redirectPlayer(player);
             }
+        }
 
-            if (!hasRedirectedAtLeastOnePlayer) {
-                // If we haven't redirected a single player, check if we can stop the server again
-                shutdownManager.scheduleShutdown(server);
-            }
-        } catch (CompletionException | CancellationException | ExecutionException | InterruptedException exception) {
-            informError(exception);
-        } finally {
-            isStarting.set(false);
-            waitingPlayers.clear();
+        if (!hasRedirectedAtLeastOnePlayer) {
+            // If we haven't redirected a single player, check if we can stop the server again
+            shutdownManager.scheduleShutdown(server);
         }
     }
 
-    private void informError(Throwable throwable) {
-        String serverName = server.getServerInfo().getName();
+    /**
+     * End the start, then release this object from the registry so that it does not keep references to the players.
+     * Players added afterward trigger a new start, so none of them is left waiting.
+     *
+     * @param state The state the server ended up in
+     * @return The players who were waiting for the server
+     */
+    private synchronized Set<Player> finish(ServerState state) {
+        String serverName = getServerName();
+        serverRegistry.transition(serverName, ServerState.STARTING, state);
+        serverRegistry.releaseStartingServer(serverName, this);
+
+        Set<Player> players = Set.copyOf(waitingPlayers);
+        waitingPlayers.clear();
+        isStarting = false;
+        isFinished = true;
+        return players;
+    }
+
+    /**
+     * @return true once the start is over, a new instance has to be taken from the registry to start the server again
+     */
+    public synchronized boolean isFinished() {
+        return isFinished;
+    }
+
+    private void informError(Throwable throwable, Set<Player> players) {
+        String serverName = getServerName();
         logger.error("An error occurred while starting the server '{}'", serverName, throwable);
-        messager.error(this, "failed.to.start.server", new Text(Component.text(serverName)));
+        messager.error(Audience.audience(players), "failed.to.start.server", new Text(Component.text(serverName)));
+    }
+
+    private String getServerName() {
+        return server.getServerInfo().getName();
     }
 
     private void waitForServer() throws ExecutionException, InterruptedException {
+        Configuration configuration = configurationLoader.getConfiguration();
+        Optional<ResourceWindow> resources = configuration.isCpuSettleAwaited()
+                ? configurationLoader.getResources(getServerName())
+                : Optional.empty();
+
         configurationLoader.getOnlineChecker(server).waitForRunning().get();
+        if (resources.isPresent()) {
+            waitForCpuToSettle(resources.get(), configuration);
+        }
+    }
+
+    /**
+     * Wait for the load of the boot to be over, so that players do not join a lagging server.
+     * Players are sent anyway once the maximum ping duration has passed since the start was requested, the boot
+     * included.
+     */
+    private void waitForCpuToSettle(ResourceWindow resources, Configuration configuration) throws ExecutionException, InterruptedException {
+        CompletableFuture<Void> settled = resources.awaitQuiet(configuration.getSettleCpuThreshold(), configuration.getSettleDuration());
+        long remaining = configuration.getMaximumPingDuration().toNanos() - (System.nanoTime() - startedAt);
+        try {
+            settled.get(Math.max(remaining, 0), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException exception) {
+            settled.cancel(false);
+            logger.warn("The CPU usage of server '{}' did not settle in time, sending the players anyway", getServerName());
+        }
     }
 
     private boolean redirectPlayer(Player player) {
         String serverName = server.getServerInfo().getName();
         Component serverNameComponent = Component.text(serverName);
         try {
+            long redirectedAt = System.nanoTime();
             ConnectionRequestBuilder.Result result = player.createConnectionRequest(server).connect().get();
+            metrics.recordRedirect(System.nanoTime() - redirectedAt);
             if (result.isSuccessful()) {
                 return result.isSuccessful();
             } else if (configurationLoader.getConfiguration().getRedirectToWaitingServerOnKick()) {
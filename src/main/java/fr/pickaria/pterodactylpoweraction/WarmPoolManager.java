@@ -0,0 +1,203 @@
+package fr.pickaria.pterodactylpoweraction;
+
+import com.velocitypowered.api.proxy.ProxyServer;
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import fr.pickaria.pterodactylpoweraction.api.RequestPriority;
+import fr.pickaria.pterodactylpoweraction.configuration.ConfigurationLoader;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Keeps a minimum number of servers of each warm pool running, whether players are on them or not.
+ * Servers of a pool are not stopped for being idle while the pool has no server to spare, and a pool that lost a server,
+ * because it was stopped or crashed, is replenished in the background.
+ * The waiting server is a pool of its own that always keeps its server running.
+ */
+public class WarmPoolManager {
+    private static final Duration REPLENISH_INTERVAL = Duration.ofSeconds(10);
+    private static final String WAITING_SERVER_POOL = "waiting_server";
+
+    private final ProxyServer proxy;
+    private final ConfigurationLoader configurationLoader;
+    private final PowerActionCoordinator coordinator;
+    private final ReachabilityCache reachabilityCache;
+    private final ServerRegistry serverRegistry;
+    private final Logger logger;
+
+    public WarmPoolManager(ProxyServer proxy, ConfigurationLoader configurationLoader, PowerActionCoordinator coordinator, ReachabilityCache reachabilityCache, ServerRegistry serverRegistry, Logger logger) {
+        this.proxy = proxy;
+        this.configurationLoader = configurationLoader;
+        this.coordinator = coordinator;
+        this.reachabilityCache = reachabilityCache;
+        this.serverRegistry = serverRegistry;
+        this.logger = logger;
+    }
+
+    /**
+     * Start the task replenishing the pools, replenishing them right away.
+     */
+    public void initialize(Object plugin) {
+        proxy.getScheduler()
+                .buildTask(plugin, this::replenishAll)
+                .repeat(REPLENISH_INTERVAL)
+                .schedule();
+    }
+
+    /**
+     * @return true if the server belongs to a warm pool, including the waiting server
+     */
+    public boolean isPoolMember(String serverName) {
+        return getPools().stream().anyMatch(pool -> pool.servers().contains(serverName));
+    }
+
+    /**
+     * Choose the servers each pool keeps running when all the servers are stopped: at most its minimum number of
+     * running servers, among the ones already running, in the order they are listed in.
+     * The waiting server is always kept, even when the plugin did not start it and does not know it is running.
+     *
+     * @return The names of the servers to leave running
+     */
+    public Set<String> getKeptRunning() {
+        Configuration configuration = configurationLoader.getConfiguration();
+        Map<String, ServerState> states = serverRegistry.getStates();
+        Set<String> kept = new HashSet<>();
+        configuration.getWaitingServerName().ifPresent(kept::add);
+        for (Configuration.WarmPool pool : configuration.getWarmPools()) {
+            pool.servers().stream()
+                    .filter(serverName -> isRunning(states.getOrDefault(serverName, ServerState.OFFLINE)))
+                    .limit(pool.minimumRunning())
+                    .forEach(kept::add);
+        }
+        return kept;
+    }
+
+    /**
+     * Check whether the server may be stopped without leaving one of its pools short of running servers.
+     *
+     * @return true if the server can be stopped
+     */
+    public boolean canStop(String serverName) {
+        return getPools().stream()
+                .filter(pool -> pool.servers().contains(serverName))
+                .allMatch(pool -> countRunning(pool) - 1 >= pool.minimumRunning());
+    }
+
+    /**
+     * Move the server to the stopping state if its pools can spare it.
+     * Checking and moving are done together, so that two servers of the same pool stopping at once cannot both leave
+     * the pool short.
+     *
+     * @return true if the server can be stopped
+     */
+    public synchronized boolean tryRelease(String serverName) {
+        if (!canStop(serverName)) {
+            return false;
+        }
+        serverRegistry.advance(serverName, ServerState.STOPPING);
+        return true;
+    }
+
+    private void replenishAll() {
+        Configuration configuration = configurationLoader.getConfiguration();
+        for (Configuration.WarmPool pool : configuration.getWarmPools()) {
+            replenish(pool);
+        }
+
+        // Only start the waiting server if asked to, the exemption from being stopped applies anyway
+        if (configuration.shouldStartWaitingServer()) {
+            getWaitingServerPool(configuration).ifPresent(this::replenish);
+        }
+    }
+
+    /**
+     * Start the servers missing for the pool to have its minimum number of running servers, in the order they are
+     * listed in.
+     */
+    private void replenish(Configuration.WarmPool pool) {
+        List<RegisteredServer> servers = pool.servers().stream()
+                .map(proxy::getServer)
+                .flatMap(Optional::stream)
+                .toList();
+        List<CompletableFuture<Boolean>> reachability = servers.stream()
+                .map(reachabilityCache::isReachable)
+                .toList();
+
+        CompletableFuture.allOf(reachability.toArray(CompletableFuture[]::new)).thenRun(() -> {
+            List<RegisteredServer> stopped = new ArrayList<>();
+            int running = 0;
+            for (int i = 0; i < servers.size(); i++) {
+                String serverName = servers.get(i).getServerInfo().getName();
+                if (reachability.get(i).join() || serverRegistry.getState(serverName) == ServerState.STARTING) {
+                    running++;
+                } else {
+                    stopped.add(servers.get(i));
+                }
+            }
+
+            for (RegisteredServer server : stopped) {
+                if (running >= pool.minimumRunning()) {
+                    break;
+                }
+                if (start(pool, server)) {
+                    running++;
+                }
+            }
+        });
+    }
+
+    private boolean start(Configuration.WarmPool pool, RegisteredServer server) {
+        String serverName = server.getServerInfo().getName();
+        if (!serverRegistry.transition(serverName, ServerState.OFFLINE, ServerState.STARTING)) {
+            return false;
+        }
+
+        logger.info("Starting server '{}' to keep {} servers of pool '{}' running.", serverName, pool.minimumRunning(), pool.name());
+        coordinator.start(serverName, RequestPriority.BACKGROUND)
+                .thenCompose(ignored -> configurationLoader.getOnlineChecker(server).waitForRunning())
+                .whenComplete((result, throwable) -> {
+                    if (throwable == null) {
+                        serverRegistry.transition(serverName, ServerState.STARTING, ServerState.RUNNING);
+                        reachabilityCache.update(server, true);
+                    } else {
+                        logger.warn("Could not start server '{}' of pool '{}'", serverName, pool.name(), throwable);
+                        serverRegistry.transition(serverName, ServerState.STARTING, ServerState.OFFLINE);
+                    }
+                });
+        return true;
+    }
+
+    /**
+     * Count the servers of the pool that are running or about to be.
+     */
+    private long countRunning(Configuration.WarmPool pool) {
+        Map<String, ServerState> states = serverRegistry.getStates();
+        return pool.servers().stream()
+                .map(serverName -> states.getOrDefault(serverName, ServerState.OFFLINE))
+                .filter(WarmPoolManager::isRunning)
+                .count();
+    }
+
+    private static boolean isRunning(ServerState state) {
+        return state == ServerState.STARTING || state == ServerState.RUNNING || state == ServerState.DRAINING;
+    }
+
+    private List<Configuration.WarmPool> getPools() {
+        Configuration configuration = configurationLoader.getConfiguration();
+        List<Configuration.WarmPool> pools = new ArrayList<>(configuration.getWarmPools());
+        getWaitingServerPool(configuration).ifPresent(pools::add);
+        return pools;
+    }
+
+    private Optional<Configuration.WarmPool> getWaitingServerPool(Configuration configuration) {
+        return configuration.getWaitingServerName()
+                .map(serverName -> new Configuration.WarmPool(WAITING_SERVER_POOL, List.of(serverName), 1));
+    }
+}
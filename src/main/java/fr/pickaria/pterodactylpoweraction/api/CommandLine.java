@@ -0,0 +1,76 @@
+package fr.pickaria.pterodactylpoweraction.api;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a command into its arguments the way a POSIX shell would, without expanding variables or globs.
+ * Single quotes keep their content as is, double quotes and backslashes escape the characters following them.
+ */
+public final class CommandLine {
+    private CommandLine() {
+    }
+
+    /**
+     * @param command The command, as written in the configuration
+     * @return The program followed by its arguments
+     * @throws IllegalArgumentException If the command is empty or a quote is not closed
+     */
+    public static List<String> parse(String command) throws IllegalArgumentException {
+        List<String> arguments = new ArrayList<>();
+        StringBuilder argument = new StringBuilder();
+        boolean hasArgument = false;
+        char quote = 0;
+
+        for (int i = 0; i < command.length(); i++) {
+            char c = command.charAt(i);
+            if (quote == '\'') {
+                if (c == '\'') {
+                    quote = 0;
+                } else {
+                    argument.append(c);
+                }
+            } else if (c == '\\') {
+                if (++i == command.length()) {
+                    throw new IllegalArgumentException("Trailing backslash in command: " + command);
+                }
+                char escaped = command.charAt(i);
+                // Inside double quotes, only the characters the shell gives a meaning to can be escaped
+                if (quote == '"' && escaped != '"' && escaped != '\\' && escaped != '$' && escaped != '`') {
+                    argument.append(c);
+                }
+                argument.append(escaped);
+                hasArgument = true;
+            } else if (quote == '"') {
+                if (c == '"') {
+                    quote = 0;
+                } else {
+                    argument.append(c);
+                }
+            } else if (c == '\'' || c == '"') {
+                quote = c;
+                hasArgument = true;
+            } else if (Character.isWhitespace(c)) {
+                if (hasArgument) {
+                    arguments.add(argument.toString());
+                    argument.setLength(0);
+                    hasArgument = false;
+                }
+            } else {
+                argument.append(c);
+                hasArgument = true;
+            }
+        }
+
+        if (quote != 0) {
+            throw new IllegalArgumentException("Unclosed " + quote + " in command: " + command);
+        }
+        if (hasArgument) {
+            arguments.add(argument.toString());
+        }
+        if (arguments.isEmpty()) {
+            throw new IllegalArgumentException("Empty command");
+        }
+        return arguments;
+    }
+}
@@ -0,0 +1,49 @@
+package fr.pickaria.pterodactylpoweraction.api;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayDeque;
+import java.util.List;
+
+/**
+ * Last lines printed by a command, kept to explain why it failed.
+ * Older lines are dropped, so that a chatty command cannot fill the memory.
+ */
+class OutputTail {
+    private static final int MAXIMUM_LINE_LENGTH = 1024;
+
+    private final int capacity;
+    private final ArrayDeque<String> lines;
+
+    OutputTail(int capacity) {
+        this.capacity = capacity;
+        this.lines = new ArrayDeque<>(capacity);
+    }
+
+    /**
+     * Read the output until the process closes it, so that the process never blocks on a full pipe.
+     */
+    void drain(InputStream output) {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(output))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                add(line.length() > MAXIMUM_LINE_LENGTH ? line.substring(0, MAXIMUM_LINE_LENGTH) : line);
+            }
+        } catch (IOException ignored) {
+            // The stream is closed when the process is destroyed
+        }
+    }
+
+    synchronized void add(String line) {
+        if (lines.size() == capacity) {
+            lines.removeFirst();
+        }
+        lines.addLast(line);
+    }
+
+    synchronized List<String> getLines() {
+        return List.copyOf(lines);
+    }
+}
@@ -0,0 +1,218 @@
+package fr.pickaria.pterodactylpoweraction.api;
+
+import fr.pickaria.pterodactylpoweraction.Configuration;
+import fr.pickaria.pterodactylpoweraction.executor.PluginExecutors;
+import org.slf4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * Runs the shell commands controlling the servers, and keeps track of the servers whose process it started itself.
+ * Waiting for a process to exit holds no thread of the plugin, the output of a command is only read while it runs.
+ * The supervisor outlives the reloads of the configuration, so that the processes it started can still be stopped.
+ */
+public class ProcessSupervisor {
+    /**
+     * Number of lines printed by a command that are logged when it fails.
+     */
+    private static final int OUTPUT_LINES = 20;
+    /**
+     * Time given to the output to be read once the command has exited.
+     */
+    private static final Duration DRAIN_DELAY = Duration.ofSeconds(1);
+
+    private final Supplier<Configuration> configurationSupplier;
+    private final PluginExecutors executors;
+    private final Logger logger;
+    private final Map<String, Process> processes = new ConcurrentHashMap<>();
+    private final Queue<Runnable> pending = new ArrayDeque<>();
+    private int running = 0;
+
+    public ProcessSupervisor(Supplier<Configuration> configurationSupplier, PluginExecutors executors, Logger logger) {
+        this.configurationSupplier = configurationSupplier;
+        this.executors = executors;
+        this.logger = logger;
+    }
+
+    /**
+     * Run a command until it exits, killing it if it takes too long.
+     *
+     * @param timeout Time after which the command is terminated and considered failed
+     * @return A future completed once the command exited successfully, or failed if it exited with another code
+     */
+    public CompletableFuture<Void> run(Optional<String> workingDirectory, String command, Duration timeout) {
+        return limit(() -> {
+            Process process = start(workingDirectory, command, ProcessBuilder.Redirect.PIPE);
+            OutputTail output = new OutputTail(OUTPUT_LINES);
+            CompletableFuture<Void> drained = CompletableFuture.runAsync(() -> output.drain(process.getInputStream()), executors.blocking());
+
+            CompletableFuture<Void> result = new CompletableFuture<>();
+            executors.delayed(timeout.toMillis()).execute(() -> {
+                if (process.isAlive() && result.completeExceptionally(new TimeoutException("Command '" + command + "' did not exit within " + timeout.toSeconds() + " seconds"))) {
+                    terminate(process.toHandle(), timeout);
+                }
+            });
+
+            process.onExit()
+                    .thenCompose(exited -> drained.completeOnTimeout(null, DRAIN_DELAY.toMillis(), TimeUnit.MILLISECONDS))
+                    .thenRun(() -> {
+                        int exitCode = process.exitValue();
+                        if (exitCode == 0) {
+                            result.complete(null);
+                        } else if (result.completeExceptionally(new RuntimeException("Command '" + command + "' exited with code " + exitCode))) {
+                            logOutput(command, output.getLines());
+                        }
+                    });
+            return result;
+        });
+    }
+
+    /**
+     * Start a command running the server itself, and keep track of its process until it exits.
+     * The output is discarded, the server writes its own logs.
+     *
+     * @return A future completed once the process is started, or right away if it is already running
+     */
+    public CompletableFuture<Void> launch(String serverName, Optional<String> workingDirectory, String command) {
+        if (getProcess(serverName).isPresent()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return limit(() -> {
+            synchronized (processes) {
+                // Another launch may have been queued before this one started the process
+                if (getProcess(serverName).isEmpty()) {
+                    Process process = start(workingDirectory, command, ProcessBuilder.Redirect.DISCARD);
+                    processes.put(serverName, process);
+                    logger.info("Server '{}' is running as process {}", serverName, process.pid());
+                    process.onExit().thenAccept(exited -> {
+                        processes.remove(serverName, exited);
+                        logger.info("Process {} of server '{}' exited with code {}", exited.pid(), serverName, exited.exitValue());
+                    });
+                }
+            }
+            return CompletableFuture.completedFuture(null);
+        });
+    }
+
+    /**
+     * @return The process of the server, if it has been launched by the plugin and is still running
+     */
+    public Optional<ProcessHandle> getProcess(String serverName) {
+        return Optional.ofNullable(processes.get(serverName))
+                .filter(Process::isAlive)
+                .map(Process::toHandle);
+    }
+
+    /**
+     * Ask the process and its children to stop with SIGTERM, then kill them with SIGKILL if they are still running
+     * after the timeout.
+     *
+     * @return A future completed once the process has exited
+     */
+    public CompletableFuture<Void> terminate(ProcessHandle process, Duration timeout) {
+        // The children are listed first, as they are given to another parent once the process exits
+        List<ProcessHandle> children = process.descendants().toList();
+        children.forEach(ProcessHandle::destroy);
+        process.destroy();
+
+        executors.delayed(timeout.toMillis()).execute(() -> {
+            if (process.isAlive()) {
+                logger.warn("Process {} did not exit within {} seconds, killing it", process.pid(), timeout.toSeconds());
+                process.destroyForcibly();
+            }
+            children.stream().filter(ProcessHandle::isAlive).forEach(ProcessHandle::destroyForcibly);
+        });
+        return process.onExit().thenApply(exited -> null);
+    }
+
+    /**
+     * @return A future completed with true if the process exits before the timeout, false otherwise
+     */
+    public CompletableFuture<Boolean> awaitExit(ProcessHandle process, Duration timeout) {
+        return process.onExit()
+                .thenApply(exited -> true)
+                .completeOnTimeout(false, timeout.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private Process start(Optional<String> workingDirectory, String command, ProcessBuilder.Redirect output) {
+        ProcessBuilder processBuilder = new ProcessBuilder(CommandLine.parse(command))
+                .redirectErrorStream(true)
+                .redirectOutput(output);
+        workingDirectory.ifPresent(directory -> processBuilder.directory(new File(directory)));
+        try {
+            return processBuilder.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void logOutput(String command, List<String> lines) {
+        if (lines.isEmpty()) {
+            logger.error("Command '{}' failed without printing anything", command);
+        } else {
+            logger.error("Command '{}' failed, its last lines were:\n{}", command, String.join("\n", lines));
+        }
+    }
+
+    /**
+     * Run the action once fewer than {@link Configuration#getShellParallelism()} commands are starting or running.
+     * The queued actions do not hold any thread while they wait.
+     */
+    private <T> CompletableFuture<T> limit(Supplier<CompletableFuture<T>> action) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable task = () -> {
+            CompletableFuture<T> future;
+            try {
+                future = action.get();
+            } catch (RuntimeException e) {
+                future = CompletableFuture.failedFuture(e);
+            }
+            future.whenComplete((value, throwable) -> {
+                release();
+                if (throwable != null) {
+                    result.completeExceptionally(throwable);
+                } else {
+                    result.complete(value);
+                }
+            });
+        };
+
+        synchronized (pending) {
+            if (running >= configurationSupplier.get().getShellParallelism()) {
+                pending.add(task);
+                return result;
+            }
+            running++;
+        }
+        // Starting a process is blocking, keep it off the caller's thread
+        executors.blocking().execute(task);
+        return result;
+    }
+
+    private void release() {
+        Runnable next;
+        synchronized (pending) {
+            next = pending.poll();
+            if (next == null) {
+                running--;
+            }
+        }
+        if (next != null) {
+            executors.blocking().execute(next);
+        }
+    }
+}
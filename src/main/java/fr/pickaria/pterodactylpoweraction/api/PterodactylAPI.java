@@ -4,23 +4,21 @@ import fr.pickaria.pterodactylpoweraction.Configuration;
 import fr.pickaria.pterodactylpoweraction.PowerActionAPI;
 import org.slf4j.Logger;
 
-import java.io.IOException;
-import java.net.URI;
-import java.net.URISyntaxException;
-import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 
 public class PterodactylAPI implements PowerActionAPI {
-    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final PterodactylClient client;
     private final Logger logger;
     private final Configuration configuration;
 
-    public PterodactylAPI(Logger logger, Configuration configuration) {
+    public PterodactylAPI(Logger logger, Configuration configuration, PterodactylClient client) {
         this.logger = logger;
         this.configuration = configuration;
+        this.client = client;
     }
 
     @Override
@@ -32,11 +30,11 @@ public class PterodactylAPI implements PowerActionAPI {
 
         String identifier = serverIdentifier.get();
         logger.info("Stopping server {}", server);
-        return makeRequest(identifier, "stop");
+        return makeRequest(identifier, "stop", RequestPriority.HOUSEKEEPING);
     }
 
     @Override
-    public CompletableFuture<Void> start(String server) {
+    public CompletableFuture<Void> start(String server, RequestPriority priority) {
         Optional<String> serverIdentifier = configuration.getPterodactylServerIdentifier(server);
         if (serverIdentifier.isEmpty()) {
             return CompletableFuture.failedFuture(new RuntimeException("No unique identifier for server " + server));
@@ -44,7 +42,7 @@ public class PterodactylAPI implements PowerActionAPI {
 
         String identifier = serverIdentifier.get();
         logger.info("Starting server {}", server);
-        return makeRequest(identifier, "start");
+        return makeRequest(identifier, "start", priority);
     }
 
     public CompletableFuture<Boolean> exists(String server) {
@@ -56,16 +54,12 @@ public class PterodactylAPI implements PowerActionAPI {
 
         HttpRequest request;
         try {
-            request = HttpRequest.newBuilder()
-                    .uri(new URI(configuration.getPterodactylClientApiBaseURL().get() + "/servers/" + identifier))
-                    .header("Authorization", "Bearer " + configuration.getPterodactylApiKey().get())
-                    .GET()
-                    .build();
-        } catch (URISyntaxException e) {
+            request = client.newRequest("/servers/" + identifier).GET().build();
+        } catch (NoSuchElementException | IllegalArgumentException e) {
             return CompletableFuture.failedFuture(e);
         }
 
-        return sendRequest(request, HttpResponse.BodyHandlers.ofString())
+        return client.send(request, HttpResponse.BodyHandlers.ofString(), RequestPriority.BACKGROUND)
                 .thenApply(response -> {
                     int statusCode = response.statusCode();
                     if (statusCode == 200) {
@@ -79,22 +73,19 @@ public class PterodactylAPI implements PowerActionAPI {
                 });
     }
 
-    private CompletableFuture<Void> makeRequest(String identifier, String action) {
+    private CompletableFuture<Void> makeRequest(String identifier, String action, RequestPriority priority) {
         assert action.equals("start") || action.equals("stop");
         String jsonBody = "{\"signal\":\"" + action + "\"}";
         HttpRequest request;
         try {
-            request = HttpRequest.newBuilder()
-                    .uri(new URI(configuration.getPterodactylClientApiBaseURL().get() + "/servers/" + identifier + "/power"))
-                    .header("Content-Type", "application/json")
-                    .header("Authorization", "Bearer " + configuration.getPterodactylApiKey().get())
+            request = client.newRequest("/servers/" + identifier + "/power")
                     .POST(HttpRequest.BodyPublishers.ofString(jsonBody))
                     .build();
-        } catch (URISyntaxException e) {
+        } catch (NoSuchElementException | IllegalArgumentException e) {
             return CompletableFuture.failedFuture(e);
         }
 
-        return sendRequest(request, HttpResponse.BodyHandlers.discarding())
+        return client.send(request, HttpResponse.BodyHandlers.discarding(), priority)
                 .thenAccept(response -> {
                     int statusCode = response.statusCode();
                     if (statusCode < 200 || statusCode >= 300) {
@@ -102,14 +93,4 @@ public class PterodactylAPI implements PowerActionAPI {
                     }
                 });
     }
-
-    private <T> CompletableFuture<HttpResponse<T>> sendRequest(HttpRequest request, HttpResponse.BodyHandler<T> handler) {
-        return CompletableFuture.supplyAsync(() -> {
-            try {
-                return httpClient.send(request, handler);
-            } catch (IOException | InterruptedException e) {
-                throw new RuntimeException(e);
-            }
-        });
-    }
 }
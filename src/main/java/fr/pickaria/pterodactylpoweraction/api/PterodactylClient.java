@@ -0,0 +1,83 @@
+package fr.pickaria.pterodactylpoweraction.api;
+
+import fr.pickaria.pterodactylpoweraction.Configuration;
+import fr.pickaria.pterodactylpoweraction.executor.PluginExecutors;
+import fr.pickaria.pterodactylpoweraction.metrics.Metrics;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Transport shared by every call made to the Pterodactyl panel.
+ * A single HTTP/2 client keeps its connections to the panel alive between requests, and its callbacks run on the
+ * callbacks pool of the plugin instead of the common pool.
+ * Requests go through a queue following the panel's rate limit.
+ */
+public class PterodactylClient {
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(10);
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(10);
+
+    private final Supplier<Configuration> configurationSupplier;
+    private final HttpClient httpClient;
+    private final RequestQueue requestQueue;
+
+    public PterodactylClient(Supplier<Configuration> configurationSupplier, PluginExecutors executors, Metrics metrics) {
+        this.configurationSupplier = configurationSupplier;
+        this.httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(CONNECT_TIMEOUT)
+                .executor(executors.callbacks())
+                .build();
+        this.requestQueue = new RequestQueue(httpClient, executors.callbacks(), metrics);
+    }
+
+    /**
+     * Create an authenticated request to the client API.
+     *
+     * @param path Path relative to the client API base URL, starting with a slash
+     * @return The request builder, with its timeout and headers already set
+     * @throws NoSuchElementException   If the base URL or the API key is not configured
+     * @throws IllegalArgumentException If the resulting URL is invalid
+     */
+    public HttpRequest.Builder newRequest(String path) throws NoSuchElementException, IllegalArgumentException {
+        Configuration configuration = configurationSupplier.get();
+        return HttpRequest.newBuilder()
+                .uri(URI.create(configuration.getPterodactylClientApiBaseURL().orElseThrow() + path))
+                .header("Accept", "application/json")
+                .header("Content-Type", "application/json")
+                .header("Authorization", "Bearer " + configuration.getPterodactylApiKey().orElseThrow())
+                .timeout(REQUEST_TIMEOUT);
+    }
+
+    /**
+     * Send the request once the panel's rate limit allows it, retrying it if the panel rejects it as too many requests.
+     *
+     * @param priority How urgent the request is compared to the other queued ones
+     */
+    public <T> CompletableFuture<HttpResponse<T>> send(HttpRequest request, HttpResponse.BodyHandler<T> handler, RequestPriority priority) {
+        return requestQueue.submit(request, handler, priority);
+    }
+
+    /**
+     * Create a WebSocket builder sharing the connection pool of the HTTP requests.
+     *
+     * @return The builder, with the headers expected by Wings already set
+     */
+    public WebSocket.Builder newWebSocketBuilder() throws NoSuchElementException, IllegalArgumentException {
+        Configuration configuration = configurationSupplier.get();
+        URI base = URI.create(configuration.getPterodactylClientApiBaseURL().orElseThrow());
+        String origin = base.getScheme() + "://" + base.getHost() + (base.getPort() == -1 ? "" : ":" + base.getPort());
+
+        return httpClient.newWebSocketBuilder()
+                .header("Authorization", "Bearer " + configuration.getPterodactylApiKey().orElseThrow())
+                .header("Origin", origin)
+                .connectTimeout(CONNECT_TIMEOUT);
+    }
+}
@@ -0,0 +1,19 @@
+package fr.pickaria.pterodactylpoweraction.api;
+
+/**
+ * Order in which queued requests are sent to the panel when its rate limit is reached, the first constant going first.
+ */
+public enum RequestPriority {
+    /**
+     * Requests a player is waiting on, such as starting the server they want to join.
+     */
+    PLAYER,
+    /**
+     * Requests nobody is waiting on, such as stopping an idle server.
+     */
+    HOUSEKEEPING,
+    /**
+     * Informational requests, such as the configuration checks.
+     */
+    BACKGROUND,
+}
@@ -0,0 +1,150 @@
+package fr.pickaria.pterodactylpoweraction.api;
+
+import fr.pickaria.pterodactylpoweraction.metrics.Metrics;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sends the requests to the panel as fast as its rate limit allows, the most urgent ones first.
+ * Requests rejected with {@code 429 Too Many Requests} are queued again after a jittered backoff, so that a burst of
+ * requests is slowed down instead of failing.
+ */
+class RequestQueue {
+    private static final int TOO_MANY_REQUESTS = 429;
+    private static final int MAXIMUM_ATTEMPTS = 5;
+    private static final Duration INITIAL_BACKOFF = Duration.ofMillis(500);
+    private static final Duration MAXIMUM_BACKOFF = Duration.ofSeconds(30);
+
+    private final HttpClient httpClient;
+    private final Executor executor;
+    private final Metrics metrics;
+    private final TokenBucket tokenBucket = new TokenBucket();
+    private final Queue<Pending<?>> queue = new PriorityQueue<>(
+            Comparator.<Pending<?>, RequestPriority>comparing(pending -> pending.priority).thenComparingLong(pending -> pending.sequence)
+    );
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicBoolean isWakeUpScheduled = new AtomicBoolean();
+
+    RequestQueue(HttpClient httpClient, Executor executor, Metrics metrics) {
+        this.httpClient = httpClient;
+        this.executor = executor;
+        this.metrics = metrics;
+    }
+
+    <T> CompletableFuture<HttpResponse<T>> submit(HttpRequest request, HttpResponse.BodyHandler<T> handler, RequestPriority priority) {
+        Pending<T> pending = new Pending<>(request, handler, priority);
+        enqueue(pending);
+        return pending.result;
+    }
+
+    private void enqueue(Pending<?> pending) {
+        synchronized (queue) {
+            // A new sequence number on retry, so that the request does not overtake the ones queued in the meantime
+            pending.sequence = sequence.getAndIncrement();
+            queue.add(pending);
+        }
+        drain();
+    }
+
+    /**
+     * Send the queued requests until the bucket is empty, then wake up once a token is available again.
+     */
+    private void drain() {
+        while (true) {
+            Pending<?> pending;
+            synchronized (queue) {
+                if (queue.isEmpty()) {
+                    return;
+                }
+
+                long wait = tokenBucket.tryAcquire();
+                if (wait > 0) {
+                    scheduleWakeUp(wait);
+                    return;
+                }
+                pending = queue.poll();
+            }
+            send(pending);
+        }
+    }
+
+    private void scheduleWakeUp(long delayNanos) {
+        if (isWakeUpScheduled.compareAndSet(false, true)) {
+            CompletableFuture.delayedExecutor(delayNanos, TimeUnit.NANOSECONDS, executor).execute(() -> {
+                isWakeUpScheduled.set(false);
+                drain();
+            });
+        }
+    }
+
+    private <T> void send(Pending<T> pending) {
+        pending.attempts++;
+        long sentAt = System.nanoTime();
+        httpClient.sendAsync(pending.request, pending.handler).whenComplete((response, throwable) -> {
+            if (throwable != null) {
+                metrics.recordPanelFailure(System.nanoTime() - sentAt);
+                pending.result.completeExceptionally(throwable);
+                return;
+            }
+
+            metrics.recordPanelResponse(response.statusCode(), System.nanoTime() - sentAt);
+
+            tokenBucket.update(response.headers());
+            if (response.statusCode() == TOO_MANY_REQUESTS && pending.attempts < MAXIMUM_ATTEMPTS) {
+                Duration retryAfter = getRetryAfter(response);
+                tokenBucket.block(retryAfter);
+
+                long delay = Math.max(retryAfter.toMillis(), getBackoff(pending.attempts));
+                CompletableFuture.delayedExecutor(delay, TimeUnit.MILLISECONDS, executor).execute(() -> enqueue(pending));
+                return;
+            }
+
+            pending.result.complete(response);
+        });
+    }
+
+    private static Duration getRetryAfter(HttpResponse<?> response) {
+        try {
+            return Duration.ofSeconds(response.headers().firstValueAsLong("Retry-After").orElse(0));
+        } catch (NumberFormatException e) {
+            // Given as a date, fall back to the backoff alone
+            return Duration.ZERO;
+        }
+    }
+
+    /**
+     * Random delay up to an exponentially growing bound, so that the requests rejected together are not retried
+     * together.
+     */
+    private static long getBackoff(int attempts) {
+        long bound = Math.min(INITIAL_BACKOFF.toMillis() << Math.min(attempts - 1, 16), MAXIMUM_BACKOFF.toMillis());
+        return ThreadLocalRandom.current().nextLong(bound / 2, bound + 1);
+    }
+
+    private static final class Pending<T> {
+        private final HttpRequest request;
+        private final HttpResponse.BodyHandler<T> handler;
+        private final RequestPriority priority;
+        private final CompletableFuture<HttpResponse<T>> result = new CompletableFuture<>();
+        private long sequence;
+        private int attempts = 0;
+
+        private Pending(HttpRequest request, HttpResponse.BodyHandler<T> handler, RequestPriority priority) {
+            this.request = request;
+            this.handler = handler;
+            this.priority = priority;
+        }
+    }
+}
@@ -4,19 +4,18 @@ import fr.pickaria.pterodactylpoweraction.Configuration;
 import fr.pickaria.pterodactylpoweraction.PowerActionAPI;
 import org.slf4j.Logger;
 
-import java.io.File;
-import java.io.IOException;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.ExecutionException;
 
 public class ShellCommandAPI implements PowerActionAPI {
     private final Logger logger;
     private final Configuration configuration;
+    private final ProcessSupervisor processSupervisor;
 
-    public ShellCommandAPI(Logger logger, Configuration configuration) {
+    public ShellCommandAPI(Logger logger, Configuration configuration, ProcessSupervisor processSupervisor) {
         this.logger = logger;
         this.configuration = configuration;
+        this.processSupervisor = processSupervisor;
     }
 
     @Override
@@ -28,11 +27,36 @@ public class ShellCommandAPI implements PowerActionAPI {
 
         Configuration.PowerCommands powerCommand = powerCommands.get();
         logger.info("Stopping server {}", server);
-        return runCommands(powerCommand.workingDirectory(), powerCommand.stop());
+        if (!powerCommand.supervised()) {
+            return processSupervisor.run(powerCommand.workingDirectory(), powerCommand.stop().orElseThrow(), powerCommand.stopTimeout());
+        }
+
+        Optional<ProcessHandle> process = processSupervisor.getProcess(server);
+        if (process.isEmpty()) {
+            // The server may have been started before the proxy, only its stop command can reach it
+            return powerCommand.stop()
+                    .map(stop -> processSupervisor.run(powerCommand.workingDirectory(), stop, powerCommand.stopTimeout()))
+                    .orElseGet(() -> CompletableFuture.failedFuture(new RuntimeException("Server " + server + " has not been started by the plugin and has no stop command")));
+        }
+
+        if (powerCommand.stop().isEmpty()) {
+            return processSupervisor.terminate(process.get(), powerCommand.stopTimeout());
+        }
+
+        // Give the stop command a chance to stop the server gracefully before signaling it
+        return processSupervisor.run(powerCommand.workingDirectory(), powerCommand.stop().get(), powerCommand.stopTimeout())
+                .exceptionally(throwable -> {
+                    logger.warn("The stop command of server {} failed, terminating its process", server, throwable);
+                    return null;
+                })
+                .thenCompose(ignored -> processSupervisor.awaitExit(process.get(), powerCommand.stopTimeout()))
+                .thenCompose(exited -> exited
+                        ? CompletableFuture.completedFuture(null)
+                        : processSupervisor.terminate(process.get(), powerCommand.stopTimeout()));
     }
 
     @Override
-    public CompletableFuture<Void> start(String server) {
+    public CompletableFuture<Void> start(String server, RequestPriority priority) {
         Optional<Configuration.PowerCommands> powerCommands = configuration.getPowerCommands(server);
         if (powerCommands.isEmpty()) {
             return CompletableFuture.failedFuture(new RuntimeException("No commands available for server " + server));
@@ -40,19 +64,9 @@ public class ShellCommandAPI implements PowerActionAPI {
 
         Configuration.PowerCommands powerCommand = powerCommands.get();
         logger.info("Starting server {}", server);
-        return runCommands(powerCommand.workingDirectory(), powerCommand.start());
-    }
-
-    private CompletableFuture<Void> runCommands(Optional<String> workingDirectory, String command) {
-        return CompletableFuture.runAsync(() -> {
-            ProcessBuilder pb = new ProcessBuilder(command.split(" "));
-            workingDirectory.ifPresent((value) -> pb.directory(new File(value)));
-            try {
-                pb.start().onExit().get();
-            } catch (IOException | ExecutionException | InterruptedException e) {
-                logger.error(e.getMessage(), e);
-                throw new RuntimeException(e);
-            }
-        });
+        if (powerCommand.supervised()) {
+            return processSupervisor.launch(server, powerCommand.workingDirectory(), powerCommand.start());
+        }
+        return processSupervisor.run(powerCommand.workingDirectory(), powerCommand.start(), powerCommand.startTimeout());
     }
 }
@@ -0,0 +1,78 @@
+package fr.pickaria.pterodactylpoweraction.api;
+
+import java.net.http.HttpHeaders;
+import java.time.Duration;
+import java.util.OptionalLong;
+
+/**
+ * Client-side copy of the panel's rate limit, so that requests are held back instead of being rejected.
+ * The bucket starts with a conservative guess, then follows the {@code X-RateLimit-*} headers of every response.
+ */
+class TokenBucket {
+    private static final Duration WINDOW = Duration.ofMinutes(1);
+    private static final long DEFAULT_LIMIT = 60;
+
+    private long capacity = DEFAULT_LIMIT;
+    private double tokens = DEFAULT_LIMIT;
+    private long refilledAt = System.nanoTime();
+    private long blockedUntil = refilledAt;
+
+    /**
+     * Take a token if one is available.
+     *
+     * @return Zero if a token was taken, otherwise the time in nanoseconds until the next token is available
+     */
+    synchronized long tryAcquire() {
+        long now = System.nanoTime();
+        if (now - blockedUntil < 0) {
+            return blockedUntil - now;
+        }
+
+        refill(now);
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / getRefillRate());
+    }
+
+    /**
+     * Align the bucket on the limit reported by the panel.
+     */
+    synchronized void update(HttpHeaders headers) {
+        OptionalLong limit = headers.firstValueAsLong("X-RateLimit-Limit");
+        if (limit.isPresent() && limit.getAsLong() > 0) {
+            capacity = limit.getAsLong();
+        }
+
+        OptionalLong remaining = headers.firstValueAsLong("X-RateLimit-Remaining");
+        if (remaining.isPresent()) {
+            refill(System.nanoTime());
+            // The panel counts the requests sent by other clients with the same key too
+            tokens = Math.min(tokens, remaining.getAsLong());
+        }
+    }
+
+    /**
+     * Hold every request back until the panel accepts them again.
+     */
+    synchronized void block(Duration duration) {
+        long until = System.nanoTime() + duration.toNanos();
+        if (until - blockedUntil > 0) {
+            blockedUntil = until;
+        }
+        tokens = 0;
+    }
+
+    private void refill(long now) {
+        tokens = Math.min(capacity, tokens + (now - refilledAt) * getRefillRate());
+        refilledAt = now;
+    }
+
+    /**
+     * @return The number of tokens added per nanosecond
+     */
+    private double getRefillRate() {
+        return (double) capacity / WINDOW.toNanos();
+    }
+}
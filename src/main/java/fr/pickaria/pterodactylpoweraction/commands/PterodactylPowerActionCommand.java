@@ -12,6 +12,7 @@ import com.velocitypowered.api.proxy.ProxyServer;
 import fr.pickaria.messager.Messager;
 import fr.pickaria.messager.components.Text;
 import fr.pickaria.pterodactylpoweraction.PterodactylPowerAction;
+import fr.pickaria.pterodactylpoweraction.ServerRegistry;
 import fr.pickaria.pterodactylpoweraction.ShutdownManager;
 import fr.pickaria.pterodactylpoweraction.configuration.ConfigurationDoctor;
 import fr.pickaria.pterodactylpoweraction.configuration.ConfigurationLoader;
@@ -20,6 +21,7 @@ import net.kyori.adventure.text.Component;
 import org.slf4j.Logger;
 
 import java.time.Duration;
+import java.util.Map;
 
 public class PterodactylPowerActionCommand {
 
@@ -29,13 +31,15 @@ public class PterodactylPowerActionCommand {
     private final Logger logger;
     private final ConfigurationLoader configurationLoader;
     private final ShutdownManager shutdownManager;
+    private final ServerRegistry serverRegistry;
     private final Messager messager;
 
-    public PterodactylPowerActionCommand(ProxyServer proxy, Logger logger, ConfigurationLoader configurationLoader, ShutdownManager shutdownManager) {
+    public PterodactylPowerActionCommand(ProxyServer proxy, Logger logger, ConfigurationLoader configurationLoader, ShutdownManager shutdownManager, ServerRegistry serverRegistry) {
         this.proxy = proxy;
         this.logger = logger;
         this.configurationLoader = configurationLoader;
         this.shutdownManager = shutdownManager;
+        this.serverRegistry = serverRegistry;
         this.messager = new Messager();
     }
 
@@ -46,6 +50,7 @@ public class PterodactylPowerActionCommand {
                 .then(BrigadierCommand.literalArgumentBuilder("help").executes(this::executeHelp))
                 .then(BrigadierCommand.literalArgumentBuilder("reload").executes(this::executeReload))
                 .then(BrigadierCommand.literalArgumentBuilder("doctor").executes(this::executeDoctor))
+                .then(BrigadierCommand.literalArgumentBuilder("status").executes(this::executeStatus))
                 .then(
                         BrigadierCommand.literalArgumentBuilder("clear")
                                 .then(BrigadierCommand.requiredArgumentBuilder("delay", IntegerArgumentType.integer(0)).executes(this::executeClear))
@@ -65,7 +70,7 @@ public class PterodactylPowerActionCommand {
 
     private int executeHelp(CommandContext<CommandSource> context) {
         CommandSource source = context.getSource();
-        messager.info(source, "command.usage", new Text(Component.text("/" + COMMAND_NAME + " <reload|doctor|clear>")));
+        messager.info(source, "command.usage", new Text(Component.text("/" + COMMAND_NAME + " <reload|doctor|clear|status>")));
         return Command.SINGLE_SUCCESS;
     }
 
@@ -89,6 +94,23 @@ public class PterodactylPowerActionCommand {
         return Command.SINGLE_SUCCESS;
     }
 
+    private int executeStatus(CommandContext<CommandSource> context) {
+        CommandSource source = context.getSource();
+        messager.info(source, "command.status.start");
+
+        Map<String, Duration> pendingShutdowns = shutdownManager.getPendingShutdowns();
+        serverRegistry.getStates().forEach((serverName, state) -> {
+            Duration pendingShutdown = pendingShutdowns.get(serverName);
+            if (pendingShutdown == null) {
+                logger.info("Server '{}' is {}.", serverName, state);
+            } else {
+                logger.info("Server '{}' is {}, it will be stopped in {} seconds if it is still empty.", serverName, state, pendingShutdown.getSeconds());
+            }
+        });
+
+        return Command.SINGLE_SUCCESS;
+    }
+
     private int executeClear(CommandContext<CommandSource> context) {
         CommandSource source = context.getSource();
         messager.info(source, "command.clear.start");
@@ -3,12 +3,14 @@ package fr.pickaria.pterodactylpoweraction.configuration;
 import com.velocitypowered.api.proxy.ProxyServer;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
 import fr.pickaria.pterodactylpoweraction.Configuration;
+import fr.pickaria.pterodactylpoweraction.api.CommandLine;
 import fr.pickaria.pterodactylpoweraction.api.PterodactylAPI;
 import org.slf4j.Logger;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.UUID;
@@ -38,8 +40,8 @@ public class ConfigurationDoctor {
 
         Optional<String> rawPingMethod = Optional.ofNullable(config.get("ping_method")).map(Object::toString).map(String::toLowerCase);
         if (rawPingMethod.isPresent()) {
-            if (!rawPingMethod.get().equals("pterodactyl") && !rawPingMethod.get().equals("ping")) {
-                logger.error("Invalid ping method '{}'. Must be either 'pterodactyl' or 'ping'.", rawPingMethod.get());
+            if (!rawPingMethod.get().equals("pterodactyl") && !rawPingMethod.get().equals("ping") && !rawPingMethod.get().equals("process")) {
+                logger.error("Invalid ping method '{}'. Must be either 'pterodactyl', 'ping' or 'process'.", rawPingMethod.get());
                 return;
             }
         }
@@ -49,9 +51,14 @@ public class ConfigurationDoctor {
             return;
         }
 
+        if (rawApiType.isPresent() && rawPingMethod.isPresent() && rawApiType.get().equals("pterodactyl") && rawPingMethod.get().equals("process")) {
+            logger.error("Pterodactyl API cannot be used with process ping method.");
+            return;
+        }
+
         APIType apiType = configuration.getAPIType();
         PingMethod pingMethod = configuration.getPingMethod();
-        PterodactylAPI pterodactylAPI = new PterodactylAPI(logger, configuration);
+        PterodactylAPI pterodactylAPI = configurationLoader.getPterodactylAPI();
 
         // Validate API-specific configuration
         if (apiType == APIType.PTERODACTYL || pingMethod == PingMethod.PTERODACTYL) {
@@ -70,6 +77,26 @@ public class ConfigurationDoctor {
             }
         }
 
+        if ((configuration.isCpuSettleAwaited() || configuration.isIdleStopEnabled()) && apiType != APIType.PTERODACTYL) {
+            logger.warn("'wait_for_cpu_settle' and 'stop_idle_early' need the resource usage reported by Pterodactyl, they are ignored when type is 'shell'.");
+            isValid = false;
+        }
+
+        if (Boolean.TRUE.equals(config.get("console_readiness"))) {
+            if (apiType != APIType.PTERODACTYL && pingMethod != PingMethod.PROCESS) {
+                logger.warn("'console_readiness' needs the console output sent by Pterodactyl or the log files of the supervised servers, it is ignored when type is 'shell' and ping method is not 'process'.");
+                isValid = false;
+            }
+            if (config.get("console_ready_patterns") instanceof Map<?, ?> patterns) {
+                for (Object serverName : patterns.keySet()) {
+                    if (!configuration.getAllServers().contains(String.valueOf(serverName))) {
+                        logger.warn("The server '{}' of 'console_ready_patterns' is missing in the 'servers' map.", serverName);
+                        isValid = false;
+                    }
+                }
+            }
+        }
+
         // Validate waiting server configuration
         Optional<String> waitingServerName = configuration.getWaitingServerName();
         if (waitingServerName.isPresent()) {
@@ -134,12 +161,25 @@ public class ConfigurationDoctor {
                                 logger.warn("'start' command for server '{}' is missing but required when type is 'shell'.", key);
                                 isValid = false;
                             }
-                            if (!powerCommands.containsKey("stop")) {
-                                logger.warn("'stop' command for server '{}' is missing but required when type is 'shell'.", key);
+                            if (pingMethod == PingMethod.PROCESS && !Boolean.TRUE.equals(powerCommands.get("supervised"))) {
+                                logger.warn("Server '{}' is not supervised, it is pinged instead of using the process ping method.", key);
+                                isValid = false;
+                            }
+                            if (!powerCommands.containsKey("stop") && !Boolean.TRUE.equals(powerCommands.get("supervised"))) {
+                                logger.warn("'stop' command for server '{}' is missing but required when type is 'shell' and the server is not supervised.", key);
                                 isValid = false;
                             }
-                            if (powerCommands.containsKey("working_directory")) {
-                                String workingDirectory = (String) powerCommands.get("working_directory");
+                            for (String command : List.of("start", "stop")) {
+                                if (powerCommands.get(command) instanceof String commandLine) {
+                                    try {
+                                        CommandLine.parse(commandLine);
+                                    } catch (IllegalArgumentException e) {
+                                        logger.warn("'{}' command for server '{}' is invalid: {}", command, key, e.getMessage());
+                                        isValid = false;
+                                    }
+                                }
+                            }
+                            if (powerCommands.get("working_directory") instanceof String workingDirectory) {
                                 Path workingDirectoryPath = Paths.get(workingDirectory);
                                 if (!Files.exists(workingDirectoryPath)) {
                                     logger.warn("The working directory specified for server '{}' does not exist.", key);
@@ -158,6 +198,42 @@ public class ConfigurationDoctor {
             }
         }
 
+        if (config.containsKey("warm_pools")) {
+            if (config.get("warm_pools") instanceof Map<?, ?> warmPools) {
+                for (Map.Entry<?, ?> entry : warmPools.entrySet()) {
+                    Object poolName = entry.getKey();
+                    if (!(entry.getValue() instanceof Map<?, ?> pool)) {
+                        logger.warn("The warm pool '{}' must be a map.", poolName);
+                        isValid = false;
+                        continue;
+                    }
+
+                    if (!(pool.get("servers") instanceof List<?> servers)) {
+                        logger.warn("'servers' of warm pool '{}' must be a list of server names.", poolName);
+                        isValid = false;
+                        continue;
+                    }
+                    for (Object server : servers) {
+                        if (!configuration.getAllServers().contains(String.valueOf(server))) {
+                            logger.warn("The server '{}' of warm pool '{}' is missing in the 'servers' map.", server, poolName);
+                            isValid = false;
+                        }
+                    }
+
+                    if (!(pool.get("min_running") instanceof Integer minimumRunning) || minimumRunning < 0) {
+                        logger.warn("'min_running' of warm pool '{}' must be a positive integer.", poolName);
+                        isValid = false;
+                    } else if (minimumRunning > servers.size()) {
+                        logger.warn("'min_running' of warm pool '{}' is greater than its number of servers.", poolName);
+                        isValid = false;
+                    }
+                }
+            } else {
+                logger.warn("The 'warm_pools' property must be a map.");
+                isValid = false;
+            }
+        }
+
         // Warn about missing optional configurations
         if (!config.containsKey("maximum_ping_duration")) {
             logger.warn("'maximum_ping_duration' is not provided, using the default value.");
@@ -177,6 +253,33 @@ public class ConfigurationDoctor {
         }
     }
 
+    /**
+     * Check the parts of the configuration the plugin cannot work without, without any network call, so that a reload
+     * is rejected before it replaces a working configuration.
+     *
+     * @return The first problem found, if any
+     */
+    static Optional<String> findStructuralError(Configuration configuration) {
+        Object serversObject = configuration.getRawConfig().get("servers");
+        if (serversObject == null) {
+            return Optional.of("The 'servers' property is missing.");
+        }
+        if (!(serversObject instanceof Map<?, ?> servers)) {
+            return Optional.of("The 'servers' property must be a map.");
+        }
+
+        APIType apiType = configuration.getAPIType();
+        for (Map.Entry<?, ?> entry : servers.entrySet()) {
+            if (apiType == APIType.PTERODACTYL && !(entry.getValue() instanceof String)) {
+                return Optional.of("The server '" + entry.getKey() + "' entry must be a string when type is 'pterodactyl'.");
+            }
+            if (apiType == APIType.SHELL && !(entry.getValue() instanceof Map)) {
+                return Optional.of("The server '" + entry.getKey() + "' entry must be a map when type is 'shell'.");
+            }
+        }
+        return Optional.empty();
+    }
+
     private boolean isUUID(String uuid) {
         try {
             UUID.fromString(uuid);
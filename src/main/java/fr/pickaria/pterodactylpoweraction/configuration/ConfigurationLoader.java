@@ -5,10 +5,20 @@ import fr.pickaria.pterodactylpoweraction.Configuration;
 import fr.pickaria.pterodactylpoweraction.OnlineChecker;
 import fr.pickaria.pterodactylpoweraction.PowerActionAPI;
 import fr.pickaria.pterodactylpoweraction.api.PterodactylAPI;
+import fr.pickaria.pterodactylpoweraction.api.ProcessSupervisor;
+import fr.pickaria.pterodactylpoweraction.api.PterodactylClient;
 import fr.pickaria.pterodactylpoweraction.api.ShellCommandAPI;
+import fr.pickaria.pterodactylpoweraction.executor.PluginExecutors;
+import fr.pickaria.pterodactylpoweraction.metrics.Metrics;
+import fr.pickaria.pterodactylpoweraction.online.ConsoleReadinessChecker;
 import fr.pickaria.pterodactylpoweraction.online.PingOnlineChecker;
+import fr.pickaria.pterodactylpoweraction.online.PingStatistics;
+import fr.pickaria.pterodactylpoweraction.online.ProcessOnlineChecker;
 import fr.pickaria.pterodactylpoweraction.online.PterodactylOnlineChecker;
+import fr.pickaria.pterodactylpoweraction.online.PterodactylStatusStream;
+import fr.pickaria.pterodactylpoweraction.online.ResourceWindow;
 import org.slf4j.Logger;
+import org.yaml.snakeyaml.error.YAMLException;
 
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -16,70 +26,316 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
 public class ConfigurationLoader {
     private static ConfigurationLoader instance;
     private final Logger logger;
     private final Path dataDirectory;
-    private Configuration configuration;
+    private final PluginExecutors executors;
+    private final PterodactylClient pterodactylClient;
+    private final PterodactylStatusStream statusStream;
+    private final ProcessSupervisor processSupervisor;
+    private final PingStatistics pingStatistics = new PingStatistics();
+    private final Map<String, CachedOnlineChecker> onlineCheckers = new ConcurrentHashMap<>();
+    private volatile Configuration configuration;
+    private volatile PowerActionAPI api;
+    private volatile PterodactylAPI pterodactylAPI;
 
-    public ConfigurationLoader(Logger logger, Path dataDirectory) {
+    public ConfigurationLoader(Logger logger, Path dataDirectory, PluginExecutors executors, Metrics metrics) {
         assert instance == null;
         instance = this;
 
         this.logger = logger;
         this.dataDirectory = dataDirectory;
+        this.executors = executors;
+        this.pterodactylClient = new PterodactylClient(this::getConfiguration, executors, metrics);
+        this.statusStream = new PterodactylStatusStream(logger, pterodactylClient, executors);
+        this.processSupervisor = new ProcessSupervisor(this::getConfiguration, executors, logger);
     }
 
+    /**
+     * @return The current configuration snapshot, replaced as a whole on reload
+     */
     public Configuration getConfiguration() {
-        if (configuration == null) {
-            this.loadConfiguration();
+        Configuration current = configuration;
+        if (current == null) {
+            synchronized (this) {
+                if (configuration == null) {
+                    this.loadConfiguration();
+                }
+                current = configuration;
+            }
+        }
+        return current;
+    }
+
+    public synchronized boolean reload() {
+        Optional<Configuration> configuration = readConfiguration();
+        configuration.ifPresent(this::apply);
+        return configuration.isPresent();
+    }
+
+    /**
+     * Read the configuration file and replace the current configuration with it, unless it is invalid.
+     * The file is read before taking the lock, so that the readers of the configuration are not held meanwhile.
+     *
+     * @return true if the configuration has been replaced
+     */
+    public boolean reloadIfValid() {
+        Optional<Configuration> configuration = readConfiguration();
+        if (configuration.isEmpty()) {
+            return false;
+        }
+
+        Optional<String> error;
+        try {
+            // Without its servers, the new configuration would drop every checker and close every status socket
+            error = ConfigurationDoctor.findStructuralError(configuration.get());
+        } catch (NoSuchElementException | IllegalArgumentException e) {
+            error = Optional.of(e.getMessage());
+        }
+        if (error.isPresent()) {
+            logger.error("Ignoring the changes to the configuration file: {}", error.get());
+            return false;
+        }
+
+        synchronized (this) {
+            apply(configuration.get());
+        }
+        return true;
+    }
+
+    private void apply(Configuration configuration) {
+        Configuration previous = this.configuration;
+        this.configuration = configuration;
+        invalidateComponents(previous, configuration);
+
+        // Close the status sockets of the servers that were removed from the configuration
+        Set<String> serverIdentifiers = configuration.getAllServers().stream()
+                .map(configuration::getPterodactylServerIdentifier)
+                .flatMap(Optional::stream)
+                .collect(Collectors.toSet());
+        statusStream.retain(serverIdentifiers);
+
+        // Watch the console before the servers are started, the line may be printed before the start is acknowledged
+        for (String serverName : configuration.getAllServers()) {
+            Optional<String> serverIdentifier = configuration.getPterodactylServerIdentifier(serverName);
+            Optional<Pattern> consoleReadyPattern = configuration.getConsoleReadyPattern(serverName);
+            if (serverIdentifier.isPresent() && consoleReadyPattern.isPresent()) {
+                statusStream.watchConsole(serverIdentifier.get(), consoleReadyPattern.get());
+            }
         }
-        return configuration;
     }
 
-    public boolean reload() {
-        return loadConfiguration();
+    public Path getConfigurationFile() {
+        return dataDirectory.resolve("config.yml");
+    }
+
+    /**
+     * @return The timings learned from the pings, kept across reloads
+     */
+    public PingStatistics getPingStatistics() {
+        return pingStatistics;
+    }
+
+    public PluginExecutors getExecutors() {
+        return executors;
     }
 
+    /**
+     * Release the long-lived resources, such as the status sockets.
+     */
+    public void close() {
+        statusStream.close();
+    }
+
+    /**
+     * @return The API controlling the servers, built once and kept until a reload changes the settings it depends on
+     */
     public PowerActionAPI getAPI() throws IllegalArgumentException {
-        if (getConfiguration().getAPIType() == APIType.PTERODACTYL) {
-            return new PterodactylAPI(logger, getConfiguration());
+        PowerActionAPI current = api;
+        if (current == null) {
+            synchronized (this) {
+                if (api == null) {
+                    api = createAPI(getConfiguration());
+                }
+                current = api;
+            }
         }
-        if (getConfiguration().getAPIType() == APIType.SHELL) {
-            return new ShellCommandAPI(logger, getConfiguration());
+        return current;
+    }
+
+    public PterodactylAPI getPterodactylAPI() {
+        PterodactylAPI current = pterodactylAPI;
+        if (current == null) {
+            synchronized (this) {
+                if (pterodactylAPI == null) {
+                    pterodactylAPI = new PterodactylAPI(logger, getConfiguration(), pterodactylClient);
+                }
+                current = pterodactylAPI;
+            }
         }
-        throw new IllegalArgumentException("Unsupported API type: " + getConfiguration().getAPIType());
+        return current;
     }
 
+    /**
+     * @return The online checker of the server, built once and kept until a reload changes the settings it depends on
+     */
     public OnlineChecker getOnlineChecker(RegisteredServer server) {
-        Configuration configuration = getConfiguration();
+        String serverName = server.getServerInfo().getName();
+        CachedOnlineChecker cached = onlineCheckers.get(serverName);
+        if (cached != null && cached.server() == server) {
+            return cached.onlineChecker();
+        }
+
+        // The server may have been registered again in Velocity, with another address
+        return onlineCheckers.compute(serverName, (name, previous) -> previous != null && previous.server() == server
+                ? previous
+                : new CachedOnlineChecker(server, createOnlineChecker(server, getConfiguration()))
+        ).onlineChecker();
+    }
+
+    /**
+     * Get the resource usage of the server as reported by the panel, opening its status socket if needed.
+     *
+     * @return The usage recorded from the first call on, or empty if the server is not controlled through Pterodactyl
+     */
+    public Optional<ResourceWindow> getResources(String serverName) {
+        // Only servers controlled through Pterodactyl have an identifier
+        return getConfiguration().getPterodactylServerIdentifier(serverName)
+                .map(serverIdentifier -> statusStream.subscribe(serverIdentifier).getResources());
+    }
+
+    private PowerActionAPI createAPI(Configuration configuration) throws IllegalArgumentException {
+        if (configuration.getAPIType() == APIType.PTERODACTYL) {
+            return getPterodactylAPI();
+        }
+        if (configuration.getAPIType() == APIType.SHELL) {
+            return new ShellCommandAPI(logger, configuration, processSupervisor);
+        }
+        throw new IllegalArgumentException("Unsupported API type: " + configuration.getAPIType());
+    }
 
+    private OnlineChecker createOnlineChecker(RegisteredServer server, Configuration configuration) {
+        String serverName = server.getServerInfo().getName();
+        OnlineChecker onlineChecker;
         if (configuration.getPingMethod() == PingMethod.PTERODACTYL) {
-            return new PterodactylOnlineChecker(server, configuration);
+            onlineChecker = new PterodactylOnlineChecker(server, configuration, statusStream);
+        } else {
+            onlineChecker = new PingOnlineChecker(server, configuration, pingStatistics.get(serverName), executors);
+            if (configuration.getPingMethod() == PingMethod.PROCESS) {
+                // The servers not launched by the plugin are still pinged
+                onlineChecker = new ProcessOnlineChecker(server, configuration, processSupervisor, onlineChecker, executors, logger);
+            }
+        }
+
+        // The process checker reads the log file of the servers it launched itself
+        Optional<Pattern> consoleReadyPattern = configuration.getConsoleReadyPattern(serverName);
+        Optional<String> serverIdentifier = configuration.getPterodactylServerIdentifier(serverName);
+        if (consoleReadyPattern.isPresent() && serverIdentifier.isPresent()) {
+            onlineChecker = new ConsoleReadinessChecker(serverName, serverIdentifier.get(), consoleReadyPattern.get(), statusStream, onlineChecker, executors, logger);
+        }
+        return onlineChecker;
+    }
+
+    /**
+     * Drop the components built from settings that changed, keeping the others along with their state.
+     */
+    private void invalidateComponents(Configuration previous, Configuration next) {
+        if (previous == null) {
+            api = null;
+            pterodactylAPI = null;
+            onlineCheckers.clear();
+            return;
+        }
+
+        Map<String, Optional<Configuration.ServerSettings>> previousServers = getServerSettings(previous);
+        Map<String, Optional<Configuration.ServerSettings>> nextServers = getServerSettings(next);
+        boolean haveServersChanged = !previousServers.equals(nextServers);
+        if (haveServersChanged) {
+            Set<String> changedServers = new TreeSet<>(previousServers.keySet());
+            changedServers.addAll(nextServers.keySet());
+            changedServers.removeIf(serverName -> previousServers.get(serverName) != null && previousServers.get(serverName).equals(nextServers.get(serverName)));
+            logger.info("Settings changed for servers {}", changedServers);
+        }
+        boolean hasAPIChanged = !getParsedAPIType(previous).equals(getParsedAPIType(next))
+                || !previous.getPterodactylApiKey().equals(next.getPterodactylApiKey())
+                || !previous.getPterodactylClientApiBaseURL().equals(next.getPterodactylClientApiBaseURL());
+        if (haveServersChanged || hasAPIChanged) {
+            // The APIs look the servers up in the configuration they were built with
+            api = null;
+            pterodactylAPI = null;
+        }
+
+        if (previous.getPingMethod() != next.getPingMethod() || !previous.getMaximumPingDuration().equals(next.getMaximumPingDuration())) {
+            onlineCheckers.clear();
         } else {
-            return new PingOnlineChecker(server, configuration);
+            onlineCheckers.keySet().removeIf(serverName -> !previous.getServer(serverName).equals(next.getServer(serverName))
+                    || !getPatternSource(previous, serverName).equals(getPatternSource(next, serverName)));
+        }
+    }
+
+    /**
+     * @return The API type, or empty if it is missing or invalid
+     */
+    private static Optional<APIType> getParsedAPIType(Configuration configuration) {
+        try {
+            return Optional.of(configuration.getAPIType());
+        } catch (NoSuchElementException | IllegalArgumentException e) {
+            return Optional.empty();
         }
     }
 
+    /**
+     * Patterns do not implement equals, compare their sources instead.
+     */
+    private static Optional<String> getPatternSource(Configuration configuration, String serverName) {
+        return configuration.getConsoleReadyPattern(serverName).map(Pattern::pattern);
+    }
+
+    private static Map<String, Optional<Configuration.ServerSettings>> getServerSettings(Configuration configuration) {
+        return configuration.getAllServers().stream()
+                .collect(Collectors.toMap(serverName -> serverName, configuration::getServer));
+    }
+
     /**
      * Loads the configuration and stores it. If loading fails, keeps the previous configuration.
+     * The new configuration is fully built before replacing the previous one, readers see either of them.
      *
      * @return true if success
      */
     private boolean loadConfiguration() {
+        Optional<Configuration> configuration = readConfiguration();
+        configuration.ifPresent(loaded -> this.configuration = loaded);
+        return configuration.isPresent();
+    }
+
+    /**
+     * Read the configuration file, creating it from the default one if it does not exist.
+     *
+     * @return The configuration, or empty if it could not be read
+     */
+    private Optional<Configuration> readConfiguration() {
         // Create the dataDirectory if it does not exist
         if (!Files.exists(dataDirectory)) {
             try {
                 Files.createDirectories(dataDirectory);
             } catch (IOException e) {
                 logger.error("Error creating data directory", e);
-                return false;
+                return Optional.empty();
             }
         }
 
         // Load the config.yml file from the dataDirectory
-        File configurationFile = dataDirectory.resolve("config.yml").toFile();
+        File configurationFile = getConfigurationFile().toFile();
         if (!configurationFile.exists()) {
             logger.info("Configuration file not found, creating it: {}", configurationFile.getAbsolutePath());
             try (InputStream in = getClass().getResourceAsStream("/config.yml")) {
@@ -90,16 +346,18 @@ public class ConfigurationLoader {
                 }
             } catch (IOException e) {
                 logger.error("Error creating default configuration", e);
-                return false;
+                return Optional.empty();
             }
         }
 
         try {
-            this.configuration = new YamlConfiguration(configurationFile, logger);
-            return true;
-        } catch (IOException e) {
+            return Optional.of(new YamlConfiguration(configurationFile, logger));
+        } catch (IOException | YAMLException e) {
             logger.error("Error loading configuration", e);
-            return false;
+            return Optional.empty();
         }
     }
+
+    private record CachedOnlineChecker(RegisteredServer server, OnlineChecker onlineChecker) {
+    }
 }
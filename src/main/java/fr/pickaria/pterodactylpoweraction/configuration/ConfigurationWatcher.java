@@ -0,0 +1,109 @@
+package fr.pickaria.pterodactylpoweraction.configuration;
+
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reloads the configuration file when it is saved.
+ * Runs on its own thread, which waits for the file to stop changing, then reads and checks it before replacing the
+ * current configuration.
+ */
+public class ConfigurationWatcher {
+    /**
+     * Editors often save a file in several writes, the reload waits for them all.
+     */
+    private static final Duration DEBOUNCE_DELAY = Duration.ofSeconds(1);
+
+    private final ConfigurationLoader configurationLoader;
+    private final Logger logger;
+    private WatchService watchService;
+
+    public ConfigurationWatcher(ConfigurationLoader configurationLoader, Logger logger) {
+        this.configurationLoader = configurationLoader;
+        this.logger = logger;
+    }
+
+    /**
+     * Start watching the configuration file if enabled in the configuration.
+     */
+    public synchronized void initialize() {
+        if (!configurationLoader.getConfiguration().isConfigurationWatched() || watchService != null) {
+            return;
+        }
+
+        Path file = configurationLoader.getConfigurationFile();
+        try {
+            watchService = file.getFileSystem().newWatchService();
+            // Watch the directory, as editors may replace the file instead of writing to it
+            file.getParent().register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            logger.error("Could not watch the configuration file", e);
+            return;
+        }
+
+        WatchService watchService = this.watchService;
+        Thread thread = new Thread(() -> watch(watchService, file.getFileName()), "PterodactylPowerAction Configuration Watcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void close() {
+        if (watchService == null) {
+            return;
+        }
+
+        try {
+            // Wakes up the thread, which then exits
+            watchService.close();
+        } catch (IOException e) {
+            logger.warn("Could not stop watching the configuration file", e);
+        }
+        watchService = null;
+    }
+
+    private void watch(WatchService watchService, Path fileName) {
+        try {
+            while (true) {
+                if (!hasChanged(watchService.take(), fileName)) {
+                    continue;
+                }
+
+                WatchKey key;
+                while ((key = watchService.poll(DEBOUNCE_DELAY.toMillis(), TimeUnit.MILLISECONDS)) != null) {
+                    hasChanged(key, fileName);
+                }
+
+                // A failed reload must not stop the watcher, the next save may fix the file
+                try {
+                    if (configurationLoader.reloadIfValid()) {
+                        logger.info("Configuration file changed, reloaded it.");
+                    }
+                } catch (RuntimeException e) {
+                    logger.error("Could not reload the configuration file", e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException ignored) {
+            // Closed
+        }
+    }
+
+    private static boolean hasChanged(WatchKey key, Path fileName) {
+        boolean hasChanged = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (fileName.equals(event.context())) {
+                hasChanged = true;
+            }
+        }
+        key.reset();
+        return hasChanged;
+    }
+}
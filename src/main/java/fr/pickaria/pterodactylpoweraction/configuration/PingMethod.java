@@ -3,4 +3,5 @@ package fr.pickaria.pterodactylpoweraction.configuration;
 public enum PingMethod {
     PING,
     PTERODACTYL,
+    PROCESS,
 }
@@ -1,39 +1,151 @@
 package fr.pickaria.pterodactylpoweraction.configuration;
 
 import fr.pickaria.pterodactylpoweraction.Configuration;
+import fr.pickaria.pterodactylpoweraction.online.ResourceWindow;
 import org.jetbrains.annotations.NotNull;
 import org.slf4j.Logger;
 import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.YAMLException;
 
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
-
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Immutable snapshot of the configuration file.
+ * The file is parsed and checked once when loaded, logging each problem a single time, so that the getters only read
+ * fields.
+ */
 public class YamlConfiguration implements Configuration {
-    private final Map<String, Object> config;
-    private final Logger logger;
-
     private static final Duration DEFAULT_SHUTDOWN_AFTER_DURATION = Duration.ofHours(1);
+    private static final Duration DEFAULT_SHUTDOWN_DEADLINE = Duration.ofSeconds(10);
+    private static final int DEFAULT_SHUTDOWN_PARALLELISM = 8;
+    private static final int DEFAULT_SHELL_PARALLELISM = 4;
+    private static final Duration DEFAULT_START_TIMEOUT = Duration.ofMinutes(1);
+    private static final Duration DEFAULT_STOP_TIMEOUT = Duration.ofSeconds(30);
+    private static final String DEFAULT_LOG_FILE = "logs/latest.log";
+    private static final boolean DEFAULT_PREDICTIVE_START = false;
+    private static final Duration DEFAULT_PREDICTIVE_START_LEAD_TIME = Duration.ofMinutes(5);
+    private static final Duration DEFAULT_PREDICTIVE_START_IDLE_TIMEOUT = Duration.ofMinutes(10);
+    private static final boolean DEFAULT_SPECULATIVE_START = false;
+    private static final boolean DEFAULT_WAIT_FOR_CPU_SETTLE = false;
+    private static final int DEFAULT_SETTLE_CPU_THRESHOLD = 100;
+    private static final Duration DEFAULT_SETTLE_DURATION = Duration.ofSeconds(5);
+    private static final boolean DEFAULT_STOP_IDLE_EARLY = false;
+    private static final int DEFAULT_IDLE_CPU_THRESHOLD = 10;
+    private static final Duration DEFAULT_IDLE_DURATION = Duration.ofMinutes(5);
+    private static final boolean DEFAULT_CONSOLE_READINESS = false;
+    /**
+     * Line printed by vanilla servers and their forks once the world is loaded
+     */
+    private static final String DEFAULT_CONSOLE_READY_PATTERN = "Done \\([0-9.,]+s\\)!";
+    private static final boolean DEFAULT_WATCH_CONFIGURATION = false;
+    private static final int DEFAULT_METRICS_PORT = 0;
+    private static final String DEFAULT_METRICS_ADDRESS = "127.0.0.1";
     private static final Duration DEFAULT_MAXIMUM_PING_DURATION = Duration.ofMinutes(1);
     private static final boolean DEFAULT_REDIRECT_TO_WAITING_SERVER_ON_KICK = false;
     private static final boolean DEFAULT_START_WAITING_SERVER = true;
     private static final PingMethod DEFAULT_PING_METHOD = PingMethod.PING;
+    private static final ShutdownBehaviour DEFAULT_SHUTDOWN_BEHAVIOUR = ShutdownBehaviour.SHUTDOWN_ALL;
+
+    private final Map<String, Object> config;
+    private final Logger logger;
+
+    private final String rawAPIType;
+    private final APIType apiType;
+    private final ShutdownBehaviour shutdownBehaviour;
+    private final Optional<String> pterodactylApiKey;
+    private final Optional<String> pterodactylClientApiBaseURL;
+    private final Map<String, ServerSettings> servers;
+    private final Optional<String> waitingServerName;
+    private final boolean startWaitingServer;
+    private final PingMethod pingMethod;
+    private final Duration maximumPingDuration;
+    private final Duration shutdownAfterDuration;
+    private final Duration shutdownDeadline;
+    private final int shutdownParallelism;
+    private final int shellParallelism;
+    private final boolean predictiveStart;
+    private final Duration predictiveStartLeadTime;
+    private final Duration predictiveStartIdleTimeout;
+    private final boolean speculativeStart;
+    private final boolean waitForCpuSettle;
+    private final int settleCpuThreshold;
+    private final Duration settleDuration;
+    private final boolean stopIdleEarly;
+    private final int idleCpuThreshold;
+    private final Duration idleDuration;
+    private final Map<String, Pattern> consoleReadyPatterns;
+    private final boolean watchConfiguration;
+    private final int metricsPort;
+    private final String metricsAddress;
+    private final boolean redirectToWaitingServerOnKick;
+    private final List<WarmPool> warmPools;
 
     public YamlConfiguration(File file, Logger logger) throws IOException {
         this.logger = logger;
 
         Yaml yaml = new Yaml();
         try (InputStream is = new FileInputStream(file)) {
-            this.config = yaml.load(is);
+            Object loaded = yaml.load(is);
+            if (loaded != null && !(loaded instanceof Map)) {
+                throw new YAMLException("The configuration file must be a map of settings, got " + loaded.getClass().getSimpleName());
+            }
+            this.config = loaded == null ? Map.of() : Collections.unmodifiableMap((Map<String, Object>) loaded);
         }
+
+        rawAPIType = get("type", String.class).orElse(null);
+        apiType = rawAPIType == null ? null : parseEnum("type", rawAPIType, APIType.class, null);
+        shutdownBehaviour = get("shutdown_behaviour", String.class)
+                .map(value -> parseEnum("shutdown_behaviour", value, ShutdownBehaviour.class, DEFAULT_SHUTDOWN_BEHAVIOUR))
+                .orElse(DEFAULT_SHUTDOWN_BEHAVIOUR);
+        pterodactylApiKey = get("pterodactyl_api_key", String.class);
+        pterodactylClientApiBaseURL = get("pterodactyl_client_api_base_url", String.class)
+                .map(YamlConfiguration::removeTrailingSlash);
+        servers = parseServers();
+        waitingServerName = get("waiting_server_name", String.class);
+        startWaitingServer = waitingServerName.isPresent() && getBoolean("start_waiting_server_on_startup", DEFAULT_START_WAITING_SERVER);
+        pingMethod = get("ping_method", String.class)
+                .map(value -> parseEnum("ping_method", value, PingMethod.class, DEFAULT_PING_METHOD))
+                .orElse(DEFAULT_PING_METHOD);
+        maximumPingDuration = getDuration("maximum_ping_duration", DEFAULT_MAXIMUM_PING_DURATION);
+        shutdownAfterDuration = getDuration("shutdown_after_duration", DEFAULT_SHUTDOWN_AFTER_DURATION);
+        shutdownDeadline = getDuration("shutdown_deadline", DEFAULT_SHUTDOWN_DEADLINE);
+        shutdownParallelism = get("shutdown_parallelism", Integer.class).orElse(DEFAULT_SHUTDOWN_PARALLELISM);
+        shellParallelism = Math.max(1, get("shell_parallelism", Integer.class).orElse(DEFAULT_SHELL_PARALLELISM));
+        predictiveStart = getBoolean("predictive_start", DEFAULT_PREDICTIVE_START);
+        predictiveStartLeadTime = getDuration("predictive_start_lead_time", DEFAULT_PREDICTIVE_START_LEAD_TIME);
+        predictiveStartIdleTimeout = getDuration("predictive_start_idle_timeout", DEFAULT_PREDICTIVE_START_IDLE_TIMEOUT);
+        speculativeStart = getBoolean("speculative_start", DEFAULT_SPECULATIVE_START);
+        waitForCpuSettle = getBoolean("wait_for_cpu_settle", DEFAULT_WAIT_FOR_CPU_SETTLE);
+        settleCpuThreshold = get("settle_cpu_threshold", Integer.class).orElse(DEFAULT_SETTLE_CPU_THRESHOLD);
+        settleDuration = getResourceDuration("settle_duration", DEFAULT_SETTLE_DURATION);
+        stopIdleEarly = getBoolean("stop_idle_early", DEFAULT_STOP_IDLE_EARLY);
+        idleCpuThreshold = get("idle_cpu_threshold", Integer.class).orElse(DEFAULT_IDLE_CPU_THRESHOLD);
+        idleDuration = getResourceDuration("idle_duration", DEFAULT_IDLE_DURATION);
+        watchConfiguration = getBoolean("watch_configuration", DEFAULT_WATCH_CONFIGURATION);
+        metricsPort = get("metrics_port", Integer.class).orElse(DEFAULT_METRICS_PORT);
+        metricsAddress = get("metrics_address", String.class).orElse(DEFAULT_METRICS_ADDRESS);
+        redirectToWaitingServerOnKick = waitingServerName.isPresent() && getBoolean("redirect_to_waiting_server_on_kick", DEFAULT_REDIRECT_TO_WAITING_SERVER_ON_KICK);
+        warmPools = parseWarmPools();
+        consoleReadyPatterns = parseConsoleReadyPatterns();
     }
 
+    /**
+     * @return The parsed file, only meant for the configuration doctor
+     */
     @Override
     public Map<String, Object> getRawConfig() {
         return config;
@@ -41,152 +153,326 @@ public class YamlConfiguration implements Configuration {
 
     @Override
     public APIType getAPIType() throws IllegalArgumentException {
-        String type = getRequired("type", String.class);
-        return APIType.valueOf(type.toUpperCase());
+        if (apiType == null) {
+            if (rawAPIType == null) {
+                throw new NoSuchElementException("Key type not found or wrong type");
+            }
+            throw new IllegalArgumentException("Unsupported API type: " + rawAPIType);
+        }
+        return apiType;
     }
 
     @Override
     public ShutdownBehaviour getShutdownBehaviour() {
-        return get("shutdown_behaviour", String.class)
-                .map(String::toUpperCase)
-                .map(ShutdownBehaviour::valueOf)
-                .orElse(ShutdownBehaviour.SHUTDOWN_ALL);
+        return shutdownBehaviour;
     }
 
     @Override
     public Optional<String> getPterodactylApiKey() {
-        return get("pterodactyl_api_key", String.class);
+        return pterodactylApiKey;
     }
 
     @Override
     public Optional<String> getPterodactylClientApiBaseURL() {
-        return get("pterodactyl_client_api_base_url", String.class)
-                .map(YamlConfiguration::removeTrailingSlash);
+        return pterodactylClientApiBaseURL;
     }
 
     @Override
     public Optional<String> getPterodactylServerIdentifier(String serverName) {
-        try {
-            Object configuration = getServerConfiguration(serverName);
-            if (configuration instanceof String) {
-                return Optional.of((String) configuration);
-            }
-        } catch (NoSuchElementException e) {
-            // Fall through to return empty
-        }
-        return Optional.empty();
+        return getServer(serverName).flatMap(ServerSettings::pterodactylIdentifier);
     }
 
     @Override
     public @NotNull Optional<String> getWaitingServerName() {
-        return get("waiting_server_name", String.class);
+        return waitingServerName;
     }
 
     @Override
     public boolean shouldStartWaitingServer() {
-        if (!hasWaitingServer()) {
-            return false;
-        }
-        return getBoolean("start_waiting_server_on_startup", DEFAULT_START_WAITING_SERVER);
+        return startWaitingServer;
     }
 
     @Override
     public PingMethod getPingMethod() {
-        return get("ping_method", String.class)
-                .map(String::toUpperCase)
-                .map(PingMethod::valueOf)
-                .orElse(DEFAULT_PING_METHOD);
+        return pingMethod;
     }
 
     @Override
     public Duration getMaximumPingDuration() {
-        return getDuration("maximum_ping_duration", DEFAULT_MAXIMUM_PING_DURATION);
+        return maximumPingDuration;
     }
 
     @Override
     public Duration getShutdownAfterDuration() {
-        return getDuration("shutdown_after_duration", DEFAULT_SHUTDOWN_AFTER_DURATION);
+        return shutdownAfterDuration;
+    }
+
+    @Override
+    public Duration getShutdownDeadline() {
+        return shutdownDeadline;
+    }
+
+    @Override
+    public int getShutdownParallelism() {
+        return shutdownParallelism;
+    }
+
+    @Override
+    public int getShellParallelism() {
+        return shellParallelism;
+    }
+
+    @Override
+    public boolean isPredictiveStartEnabled() {
+        return predictiveStart;
+    }
+
+    @Override
+    public Duration getPredictiveStartLeadTime() {
+        return predictiveStartLeadTime;
+    }
+
+    @Override
+    public Duration getPredictiveStartIdleTimeout() {
+        return predictiveStartIdleTimeout;
+    }
+
+    @Override
+    public boolean isSpeculativeStartEnabled() {
+        return speculativeStart;
+    }
+
+    @Override
+    public boolean isCpuSettleAwaited() {
+        return waitForCpuSettle;
+    }
+
+    @Override
+    public int getSettleCpuThreshold() {
+        return settleCpuThreshold;
+    }
+
+    @Override
+    public Duration getSettleDuration() {
+        return settleDuration;
+    }
+
+    @Override
+    public boolean isIdleStopEnabled() {
+        return stopIdleEarly;
+    }
+
+    @Override
+    public int getIdleCpuThreshold() {
+        return idleCpuThreshold;
+    }
+
+    @Override
+    public Duration getIdleDuration() {
+        return idleDuration;
+    }
+
+    @Override
+    public Optional<Pattern> getConsoleReadyPattern(String serverName) {
+        return Optional.ofNullable(consoleReadyPatterns.get(serverName));
+    }
+
+    @Override
+    public boolean isConfigurationWatched() {
+        return watchConfiguration;
+    }
+
+    @Override
+    public int getMetricsPort() {
+        return metricsPort;
+    }
+
+    @Override
+    public String getMetricsAddress() {
+        return metricsAddress;
     }
 
     @Override
     public boolean getRedirectToWaitingServerOnKick() {
-        if (!hasWaitingServer()) {
-            return false;
-        }
-        return getBoolean("redirect_to_waiting_server_on_kick", DEFAULT_REDIRECT_TO_WAITING_SERVER_ON_KICK);
+        return redirectToWaitingServerOnKick;
     }
 
     @Override
     public Set<String> getAllServers() {
-        return getServerMap().keySet();
+        return servers.keySet();
+    }
+
+    @Override
+    public Optional<ServerSettings> getServer(String serverName) {
+        return Optional.ofNullable(servers.get(serverName));
+    }
+
+    @Override
+    public List<WarmPool> getWarmPools() {
+        return warmPools;
     }
 
     @Override
     public Optional<PowerCommands> getPowerCommands(String serverName) {
-        try {
-            Map<String, Object> serverConfiguration = (Map<String, Object>) getServerConfiguration(serverName);
+        return getServer(serverName).flatMap(ServerSettings::powerCommands);
+    }
 
-            if (!serverConfiguration.containsKey("start")) {
-                logger.error("'servers.{}.start' is missing from the configuration file", serverName);
-                return Optional.empty();
+    private Map<String, ServerSettings> parseServers() {
+        Object value = config.get("servers");
+        if (!(value instanceof Map<?, ?> serverMap)) {
+            if (value != null) {
+                logger.warn("Key 'servers' has wrong type, expected Map but got {}", value.getClass().getSimpleName());
             }
+            return Map.of();
+        }
+
+        Map<String, ServerSettings> servers = new LinkedHashMap<>();
+        for (Map.Entry<?, ?> entry : serverMap.entrySet()) {
+            String serverName = String.valueOf(entry.getKey());
+            Optional<String> identifier = Optional.empty();
+            Optional<PowerCommands> powerCommands = Optional.empty();
 
-            if (!serverConfiguration.containsKey("stop")) {
-                logger.error("'servers.{}.stop' is missing from the configuration file", serverName);
-                return Optional.empty();
+            if (entry.getValue() instanceof String serverIdentifier) {
+                identifier = Optional.of(serverIdentifier);
+            } else if (entry.getValue() instanceof Map<?, ?> serverConfiguration) {
+                powerCommands = parsePowerCommands(serverName, serverConfiguration);
             }
 
-            Optional<String> workingDirectory = Optional.ofNullable((String) serverConfiguration.get("working_directory"));
-            String startCommands = (String) serverConfiguration.get("start");
-            String stopCommands = (String) serverConfiguration.get("stop");
+            servers.put(serverName, new ServerSettings(serverName, identifier, powerCommands));
+        }
+        return Collections.unmodifiableMap(servers);
+    }
+
+    private Optional<PowerCommands> parsePowerCommands(String serverName, Map<?, ?> serverConfiguration) {
+        String path = "servers." + serverName + ".";
+        Optional<String> startCommands = get(serverConfiguration, "start", path, String.class);
+        if (startCommands.isEmpty()) {
+            logger.error("'servers.{}.start' is missing from the configuration file", serverName);
+            return Optional.empty();
+        }
 
-            return Optional.of(new PowerCommands(workingDirectory, startCommands, stopCommands));
-        } catch (NoSuchElementException e) {
+        boolean supervised = get(serverConfiguration, "supervised", path, Boolean.class).orElse(false);
+        Optional<String> stopCommands = get(serverConfiguration, "stop", path, String.class);
+        // The process of a supervised server can be stopped without a command
+        if (!supervised && stopCommands.isEmpty()) {
+            logger.error("'servers.{}.stop' is missing from the configuration file", serverName);
             return Optional.empty();
         }
+
+        Optional<String> workingDirectory = get(serverConfiguration, "working_directory", path, String.class);
+        Duration startTimeout = get(serverConfiguration, "start_timeout", path, Integer.class).map(Duration::ofSeconds).orElse(DEFAULT_START_TIMEOUT);
+        Duration stopTimeout = get(serverConfiguration, "stop_timeout", path, Integer.class).map(Duration::ofSeconds).orElse(DEFAULT_STOP_TIMEOUT);
+        String logFile = get(serverConfiguration, "log_file", path, String.class).orElse(DEFAULT_LOG_FILE);
+
+        return Optional.of(new PowerCommands(workingDirectory, startCommands.get(), stopCommands, supervised, startTimeout, stopTimeout, logFile));
     }
 
-    private Map<String, Object> getServerMap() {
-        return (Map<String, Object>) config.get("servers");
+    /**
+     * Malformed groups are left out, the configuration doctor reports them.
+     */
+    private List<WarmPool> parseWarmPools() {
+        if (!(config.get("warm_pools") instanceof Map<?, ?> warmPools)) {
+            return List.of();
+        }
+
+        List<WarmPool> pools = new ArrayList<>();
+        for (Map.Entry<?, ?> entry : warmPools.entrySet()) {
+            if (entry.getValue() instanceof Map<?, ?> pool
+                    && pool.get("servers") instanceof List<?> servers
+                    && pool.get("min_running") instanceof Integer minimumRunning) {
+                List<String> serverNames = servers.stream().map(String::valueOf).toList();
+                pools.add(new WarmPool(String.valueOf(entry.getKey()), serverNames, minimumRunning));
+            }
+        }
+        return List.copyOf(pools);
     }
 
-    private @NotNull Object getServerConfiguration(String serverName) throws NoSuchElementException {
-        Map<String, Object> servers = getServerMap();
-        if (servers.containsKey(serverName)) {
-            return servers.get(serverName);
+    /**
+     * Compile the ready pattern of each server controlled through Pterodactyl, as only their console can be read.
+     * A server whose own pattern is invalid uses the default one.
+     */
+    private Map<String, Pattern> parseConsoleReadyPatterns() {
+        if (!getBoolean("console_readiness", DEFAULT_CONSOLE_READINESS)) {
+            return Map.of();
         }
-        throw new NoSuchElementException("Server " + serverName + " not found in the configuration");
+
+        Optional<Pattern> defaultPattern = compilePattern("console_ready_pattern", get("console_ready_pattern", String.class).orElse(DEFAULT_CONSOLE_READY_PATTERN));
+        Map<?, ?> serverPatterns = config.get("console_ready_patterns") instanceof Map<?, ?> map ? map : Map.of();
+
+        Map<String, Pattern> patterns = new LinkedHashMap<>();
+        for (ServerSettings server : servers.values()) {
+            // The console is read from the socket of Pterodactyl, or from the log file of the processes started by the plugin
+            boolean hasLogFile = pingMethod == PingMethod.PROCESS && server.powerCommands().map(PowerCommands::supervised).orElse(false);
+            if (server.pterodactylIdentifier().isEmpty() && !hasLogFile) {
+                continue;
+            }
+
+            Optional<Pattern> pattern = Optional.ofNullable(serverPatterns.get(server.name()))
+                    .flatMap(value -> compilePattern("console_ready_patterns." + server.name(), String.valueOf(value)))
+                    .or(() -> defaultPattern);
+            pattern.ifPresent(value -> patterns.put(server.name(), value));
+        }
+        return Collections.unmodifiableMap(patterns);
     }
 
-    public Duration getDuration(String key, Duration defaultValue) {
+    private Optional<Pattern> compilePattern(String key, String value) {
+        try {
+            return Optional.of(Pattern.compile(value));
+        } catch (PatternSyntaxException e) {
+            logger.warn("Key '{}' has an invalid pattern '{}': {}", key, value, e.getDescription());
+            return Optional.empty();
+        }
+    }
+
+    private <T extends Enum<T>> T parseEnum(String key, String value, Class<T> type, T defaultValue) {
+        try {
+            return Enum.valueOf(type, value.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            logger.warn("Key '{}' has an invalid value '{}'", key, value);
+            return defaultValue;
+        }
+    }
+
+    private Duration getDuration(String key, Duration defaultValue) {
         return get(key, Integer.class).map(Duration::ofSeconds).orElse(defaultValue);
     }
 
-    public boolean getBoolean(String key, boolean defaultValue) {
+    /**
+     * Read a period over which the resource usage is checked, which cannot be longer than the usage is kept.
+     */
+    private Duration getResourceDuration(String key, Duration defaultValue) {
+        Duration duration = getDuration(key, defaultValue);
+        if (duration.compareTo(ResourceWindow.RETENTION) > 0) {
+            logger.warn("Key '{}' cannot be longer than {} seconds, using {} seconds", key, ResourceWindow.RETENTION.getSeconds(), ResourceWindow.RETENTION.getSeconds());
+            return ResourceWindow.RETENTION;
+        }
+        return duration;
+    }
+
+    private boolean getBoolean(String key, boolean defaultValue) {
         return get(key, Boolean.class).orElse(defaultValue);
     }
 
-    public <T> Optional<T> get(String key, Class<T> type) {
-        Object value = config.get(key);
+    /**
+     * Read a key, warning if it holds a value of the wrong type. Missing keys are optional and take their default value.
+     */
+    private <T> Optional<T> get(String key, Class<T> type) {
+        return get(config, key, "", type);
+    }
+
+    /**
+     * @param prefix Path of the map in the file, for the warning
+     */
+    private <T> Optional<T> get(Map<?, ?> map, String key, String prefix, Class<T> type) {
+        Object value = map.get(key);
         if (type.isInstance(value)) {
             return Optional.of(type.cast(value));
-        } else if (value == null) {
-            logger.warn("Key '{}' has wrong type, expected {} but got null", key, type.getSimpleName());
-        } else {
-            logger.warn("Key '{}' has wrong type, expected {} but got {}", key, type.getSimpleName(), value.getClass().getSimpleName());
+        } else if (value != null) {
+            logger.warn("Key '{}' has wrong type, expected {} but got {}", prefix + key, type.getSimpleName(), value.getClass().getSimpleName());
         }
         return Optional.empty();
     }
 
-    public <T> T getRequired(String key, Class<T> type) throws NoSuchElementException, ClassCastException {
-        return get(key, type)
-                .orElseThrow(() -> new NoSuchElementException("Key " + key + " not found or wrong type"));
-    }
-
-    private boolean hasWaitingServer() {
-        return getWaitingServerName().isPresent();
-    }
-
     private static @NotNull String removeTrailingSlash(@NotNull String s) {
         if (s.endsWith("/")) {
             return s.substring(0, s.length() - 1);
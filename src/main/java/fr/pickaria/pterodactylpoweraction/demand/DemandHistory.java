@@ -0,0 +1,244 @@
+package fr.pickaria.pterodactylpoweraction.demand;
+
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Join and leave events of each server, kept on disk to learn when players usually come.
+ * Each server has its own append-only file of 4-byte records holding the minute of the event and its type. Events older
+ * than the retention period are dropped when the file is compacted.
+ */
+public class DemandHistory {
+    private static final String EXTENSION = ".bin";
+    private static final Duration RETENTION = Duration.ofDays(8 * 7);
+    private static final Duration PROFILE_LIFETIME = Duration.ofHours(1);
+    private static final int JOIN = 0;
+    private static final int LEAVE = 1;
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    private final Path directory;
+    private final Logger logger;
+    private final Map<String, ServerHistory> histories = new ConcurrentHashMap<>();
+
+    public DemandHistory(Path directory, Logger logger) {
+        this.directory = directory;
+        this.logger = logger;
+    }
+
+    /**
+     * Read the history of every server from the disk, compacting the files holding expired events.
+     */
+    public void load() {
+        if (!Files.isDirectory(directory)) {
+            return;
+        }
+
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + EXTENSION)) {
+            for (Path file : files) {
+                String fileName = file.getFileName().toString();
+                String serverName;
+                try {
+                    serverName = decodeServerName(fileName.substring(0, fileName.length() - EXTENSION.length()));
+                } catch (IllegalArgumentException e) {
+                    logger.warn("Ignoring the join history file '{}', its name is not a server name", fileName);
+                    continue;
+                }
+                ServerHistory history = getHistory(serverName);
+                synchronized (history) {
+                    history.read(file);
+                    history.flushedCount = 0;
+                    history.pruneExpired(getCurrentMinute());
+                    history.write(file, false);
+                }
+            }
+        } catch (IOException e) {
+            logger.error("Could not read the join history", e);
+        }
+    }
+
+    public void recordJoin(String serverName) {
+        getHistory(serverName).add(getCurrentMinute(), JOIN);
+    }
+
+    public void recordLeave(String serverName) {
+        getHistory(serverName).add(getCurrentMinute(), LEAVE);
+    }
+
+    /**
+     * Write the events recorded since the last flush.
+     */
+    public void flush() {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            logger.error("Could not create the join history directory", e);
+            return;
+        }
+
+        long now = getCurrentMinute();
+        histories.forEach((serverName, history) -> {
+            synchronized (history) {
+                try {
+                    // Rewrite the file once enough events expired, otherwise only append the new ones
+                    boolean compact = history.pruneExpired(now) > history.count / 4;
+                    history.write(getFile(serverName), !compact);
+                } catch (IOException e) {
+                    logger.error("Could not write the join history of server '{}'", serverName, e);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return The demand profile of the server, computed from its history at most once per hour
+     */
+    public DemandProfile getProfile(String serverName) {
+        ServerHistory history = getHistory(serverName);
+        long now = getCurrentMinute();
+        synchronized (history) {
+            if (history.profile == null || now - history.profileComputedAt >= PROFILE_LIFETIME.toMinutes()) {
+                history.profile = DemandProfile.compute(history.events, history.count, now, ZoneId.systemDefault());
+                history.profileComputedAt = now;
+            }
+            return history.profile;
+        }
+    }
+
+    static long getMinute(int event) {
+        return event >>> 1;
+    }
+
+    static boolean isJoin(int event) {
+        return (event & 1) == JOIN;
+    }
+
+    private ServerHistory getHistory(String serverName) {
+        return histories.computeIfAbsent(serverName, name -> new ServerHistory());
+    }
+
+    private Path getFile(String serverName) {
+        return directory.resolve(encodeServerName(serverName) + EXTENSION);
+    }
+
+    /**
+     * Percent-encode the characters that may not be valid in a file name, so that the name can be read back.
+     */
+    static String encodeServerName(String serverName) {
+        StringBuilder builder = new StringBuilder();
+        for (byte b : serverName.getBytes(StandardCharsets.UTF_8)) {
+            char c = (char) (b & 0xFF);
+            if ((c >= 'A' && c <= 'Z') || (c >= 'a' && c <= 'z') || (c >= '0' && c <= '9') || c == '_' || c == '.' || c == '-') {
+                builder.append(c);
+            } else {
+                builder.append('%').append(HEX_DIGITS[(b >> 4) & 0xF]).append(HEX_DIGITS[b & 0xF]);
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @throws IllegalArgumentException If the name has an invalid escape sequence
+     */
+    static String decodeServerName(String encoded) throws IllegalArgumentException {
+        // Spaces and plus signs are always escaped, so the form decoding does not alter the name
+        return URLDecoder.decode(encoded, StandardCharsets.UTF_8);
+    }
+
+    private static long getCurrentMinute() {
+        return System.currentTimeMillis() / Duration.ofMinutes(1).toMillis();
+    }
+
+    private static final class ServerHistory {
+        private int[] events = new int[64];
+        private int count = 0;
+        /**
+         * Number of events already written to the file.
+         */
+        private int flushedCount = 0;
+        private DemandProfile profile;
+        private long profileComputedAt;
+
+        private synchronized void add(long minute, int type) {
+            if (count == events.length) {
+                events = Arrays.copyOf(events, count * 2);
+            }
+            events[count++] = (int) (minute << 1) | type;
+        }
+
+        /**
+         * Drop the events older than the retention period.
+         *
+         * @return The number of events dropped
+         */
+        private int pruneExpired(long now) {
+            long oldest = now - RETENTION.toMinutes();
+            int expired = 0;
+            while (expired < count && getMinute(events[expired]) < oldest) {
+                expired++;
+            }
+            if (expired > 0) {
+                System.arraycopy(events, expired, events, 0, count - expired);
+                count -= expired;
+                flushedCount = Math.max(0, flushedCount - expired);
+            }
+            return expired;
+        }
+
+        private void read(Path file) throws IOException {
+            try (InputStream in = Files.newInputStream(file);
+                 DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+                while (true) {
+                    int event = data.readInt();
+                    if (count == events.length) {
+                        events = Arrays.copyOf(events, count * 2);
+                    }
+                    events[count++] = event;
+                }
+            } catch (EOFException ignored) {
+                // End of the file, a truncated last record is dropped
+            }
+        }
+
+        /**
+         * @param append true to only write the events added since the last write, false to rewrite the whole file
+         */
+        private void write(Path file, boolean append) throws IOException {
+            if (append && flushedCount == count) {
+                return;
+            }
+
+            Path target = append ? file : file.resolveSibling(file.getFileName() + ".tmp");
+            StandardOpenOption mode = append ? StandardOpenOption.APPEND : StandardOpenOption.TRUNCATE_EXISTING;
+            try (OutputStream out = Files.newOutputStream(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE, mode);
+                 DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out))) {
+                for (int i = append ? flushedCount : 0; i < count; i++) {
+                    data.writeInt(events[i]);
+                }
+            }
+            if (!append) {
+                Files.move(target, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+            flushedCount = count;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package fr.pickaria.pterodactylpoweraction.demand;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * Share of the past weeks in which a server had players, for each hour of the week.
+ * Recent weeks weigh more than older ones, so that the profile follows changes in the habits of the players.
+ */
+public class DemandProfile {
+    static final int SLOTS = 7 * 24;
+    private static final long MINUTES_PER_HOUR = 60;
+    private static final long MINUTES_PER_WEEK = SLOTS * MINUTES_PER_HOUR;
+    private static final double WEEKLY_DECAY = 0.7;
+    /**
+     * Longest time a server is considered occupied without any event, in case a leave was not recorded.
+     */
+    private static final long MAXIMUM_OCCUPIED_GAP = Duration.ofHours(6).toMinutes();
+
+    private final double[] demand;
+    private final ZoneId zone;
+
+    private DemandProfile(double[] demand, ZoneId zone) {
+        this.demand = demand;
+        this.zone = zone;
+    }
+
+    /**
+     * @return The share of the past weeks in which the server had players at the same hour of the week, between 0 and 1
+     */
+    public double getDemand(Instant at) {
+        return demand[getSlot(at.getEpochSecond() / 60, zone)];
+    }
+
+    /**
+     * Build the profile from the history of a server.
+     *
+     * @param events    The events, oldest first, as encoded by {@link DemandHistory}
+     * @param count     The number of events to read
+     * @param nowMinute The current time, in minutes since the epoch
+     */
+    static DemandProfile compute(int[] events, int count, long nowMinute, ZoneId zone) {
+        double[] demand = new double[SLOTS];
+        if (count == 0) {
+            return new DemandProfile(demand, zone);
+        }
+
+        long firstMinute = DemandHistory.getMinute(events[0]);
+        int weeks = (int) Math.max(1, (nowMinute - firstMinute + MINUTES_PER_WEEK - 1) / MINUTES_PER_WEEK);
+        boolean[][] occupied = new boolean[weeks][SLOTS];
+
+        int players = 0;
+        long previousMinute = firstMinute;
+        for (int i = 0; i < count; i++) {
+            long minute = DemandHistory.getMinute(events[i]);
+            if (players > 0) {
+                markOccupied(occupied, previousMinute, minute, nowMinute, zone);
+            }
+
+            if (DemandHistory.isJoin(events[i])) {
+                markOccupied(occupied, minute, minute, nowMinute, zone);
+                players++;
+            } else {
+                players = Math.max(0, players - 1);
+            }
+            previousMinute = minute;
+        }
+        if (players > 0) {
+            markOccupied(occupied, previousMinute, nowMinute, nowMinute, zone);
+        }
+
+        double totalWeight = 0;
+        for (int week = 0; week < weeks; week++) {
+            double weight = Math.pow(WEEKLY_DECAY, week);
+            totalWeight += weight;
+            for (int slot = 0; slot < SLOTS; slot++) {
+                if (occupied[week][slot]) {
+                    demand[slot] += weight;
+                }
+            }
+        }
+        for (int slot = 0; slot < SLOTS; slot++) {
+            demand[slot] /= totalWeight;
+        }
+
+        return new DemandProfile(demand, zone);
+    }
+
+    /**
+     * Mark every hour between the two instants as occupied.
+     */
+    private static void markOccupied(boolean[][] occupied, long fromMinute, long toMinute, long nowMinute, ZoneId zone) {
+        long endMinute = Math.min(toMinute, fromMinute + MAXIMUM_OCCUPIED_GAP);
+        for (long minute = fromMinute; minute < endMinute; minute += MINUTES_PER_HOUR) {
+            markOccupied(occupied, minute, nowMinute, zone);
+        }
+        markOccupied(occupied, endMinute, nowMinute, zone);
+    }
+
+    private static void markOccupied(boolean[][] occupied, long minute, long nowMinute, ZoneId zone) {
+        int week = (int) ((nowMinute - minute) / MINUTES_PER_WEEK);
+        if (week >= 0 && week < occupied.length) {
+            occupied[week][getSlot(minute, zone)] = true;
+        }
+    }
+
+    private static int getSlot(long epochMinute, ZoneId zone) {
+        ZonedDateTime time = Instant.ofEpochSecond(epochMinute * 60).atZone(zone);
+        return (time.getDayOfWeek().getValue() - 1) * 24 + time.getHour();
+    }
+}
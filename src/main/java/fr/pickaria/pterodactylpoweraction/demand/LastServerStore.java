@@ -0,0 +1,125 @@
+package fr.pickaria.pterodactylpoweraction.demand;
+
+import org.slf4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+
+/**
+ * Last server each player played on, limited to the players seen most recently.
+ * Changes are appended to a log file, which is rewritten from the entries still held once it has grown much larger than
+ * them.
+ */
+public class LastServerStore {
+    private static final int MAXIMUM_ENTRIES = 10_000;
+    /**
+     * Number of records the log may hold beyond the current entries before it is compacted.
+     */
+    private static final int COMPACTION_SLACK = 1_000;
+
+    private final Path file;
+    private final Logger logger;
+    private final Map<UUID, String> lastServers = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<UUID, String> eldest) {
+            return size() > MAXIMUM_ENTRIES;
+        }
+    };
+    private final Map<UUID, String> unsaved = new LinkedHashMap<>();
+    private int loggedRecords = 0;
+
+    public LastServerStore(Path file, Logger logger) {
+        this.file = file;
+        this.logger = logger;
+    }
+
+    /**
+     * Replay the log file, the latest record of each player winning.
+     */
+    public synchronized void load() {
+        if (!Files.exists(file)) {
+            return;
+        }
+
+        try (InputStream in = Files.newInputStream(file);
+             DataInputStream data = new DataInputStream(new BufferedInputStream(in))) {
+            while (true) {
+                UUID player = new UUID(data.readLong(), data.readLong());
+                lastServers.put(player, data.readUTF());
+                loggedRecords++;
+            }
+        } catch (EOFException ignored) {
+            // End of the file, a truncated last record is dropped
+        } catch (IOException e) {
+            logger.error("Could not read the last servers of the players", e);
+        }
+    }
+
+    public synchronized Optional<String> get(UUID player) {
+        return Optional.ofNullable(lastServers.get(player));
+    }
+
+    public synchronized void put(UUID player, String serverName) {
+        if (!serverName.equals(lastServers.put(player, serverName))) {
+            unsaved.put(player, serverName);
+        }
+    }
+
+    /**
+     * Append the changes made since the last flush, or rewrite the file if it holds too many outdated records.
+     */
+    public synchronized void flush() {
+        if (unsaved.isEmpty()) {
+            return;
+        }
+
+        try {
+            Files.createDirectories(file.getParent());
+            if (loggedRecords + unsaved.size() > lastServers.size() + COMPACTION_SLACK) {
+                compact();
+            } else {
+                try (OutputStream out = Files.newOutputStream(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                    write(out, unsaved);
+                }
+                loggedRecords += unsaved.size();
+            }
+            unsaved.clear();
+        } catch (IOException e) {
+            logger.error("Could not save the last servers of the players", e);
+        }
+    }
+
+    private void compact() throws IOException {
+        Path temporaryFile = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temporaryFile)) {
+            // Least recently used first, so that replaying the file restores the same order
+            write(out, lastServers);
+        }
+        Files.move(temporaryFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        loggedRecords = lastServers.size();
+    }
+
+    private static void write(OutputStream out, Map<UUID, String> entries) throws IOException {
+        DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out));
+        for (Map.Entry<UUID, String> entry : entries.entrySet()) {
+            data.writeLong(entry.getKey().getMostSignificantBits());
+            data.writeLong(entry.getKey().getLeastSignificantBits());
+            data.writeUTF(entry.getValue());
+        }
+        data.flush();
+    }
+}
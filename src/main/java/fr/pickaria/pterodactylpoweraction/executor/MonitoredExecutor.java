@@ -0,0 +1,70 @@
+package fr.pickaria.pterodactylpoweraction.executor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Executor counting the tasks waiting for a thread and the ones being run, so that a pool saturated by a slow panel
+ * shows up in the metrics.
+ */
+public class MonitoredExecutor implements Executor {
+    private final String name;
+    private final ExecutorService delegate;
+    private final AtomicInteger queuedTasks = new AtomicInteger();
+    private final AtomicInteger activeTasks = new AtomicInteger();
+    private final LongAdder completedTasks = new LongAdder();
+
+    MonitoredExecutor(String name, ExecutorService delegate) {
+        this.name = name;
+        this.delegate = delegate;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        queuedTasks.incrementAndGet();
+        try {
+            delegate.execute(() -> {
+                queuedTasks.decrementAndGet();
+                activeTasks.incrementAndGet();
+                try {
+                    task.run();
+                } finally {
+                    activeTasks.decrementAndGet();
+                    completedTasks.increment();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            queuedTasks.decrementAndGet();
+            throw e;
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return The number of tasks submitted but not started yet
+     */
+    public int getQueuedTasks() {
+        return queuedTasks.get();
+    }
+
+    /**
+     * @return The number of tasks being run
+     */
+    public int getActiveTasks() {
+        return activeTasks.get();
+    }
+
+    public long getCompletedTasks() {
+        return completedTasks.sum();
+    }
+
+    void shutdown() {
+        delegate.shutdown();
+    }
+}
@@ -0,0 +1,116 @@
+package fr.pickaria.pterodactylpoweraction.executor;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Owns the threads of the plugin, so that its work never runs on the common pool shared with the other plugins.
+ * <ul>
+ *     <li>The callbacks pool runs short tasks that never block: the callbacks of the panel client and the retries.</li>
+ *     <li>The blocking pool runs the tasks waiting on something else, such as a shell command or a server to start.
+ *     It uses virtual threads when the JVM has them, and a bounded pool of platform threads otherwise.</li>
+ * </ul>
+ * The two pools are kept apart so that blocked tasks cannot hold the threads the tasks they wait on would run on.
+ */
+public class PluginExecutors {
+    private static final String THREAD_PREFIX = "PterodactylPowerAction-";
+    private static final int CALLBACK_THREADS = 4;
+    private static final int BLOCKING_THREADS = 32;
+    private static final Duration KEEP_ALIVE = Duration.ofSeconds(60);
+    private static final int VIRTUAL_THREADS_VERSION = 21;
+
+    private final MonitoredExecutor callbacks;
+    private final MonitoredExecutor blocking;
+    private final boolean usesVirtualThreads;
+
+    public PluginExecutors() {
+        this(Runtime.version().feature() >= VIRTUAL_THREADS_VERSION);
+    }
+
+    /**
+     * @param preferVirtualThreads Whether to run the blocking tasks on virtual threads, if the JVM supports them
+     */
+    public PluginExecutors(boolean preferVirtualThreads) {
+        Optional<ExecutorService> virtualThreads = preferVirtualThreads ? newVirtualThreadExecutor("blocking-") : Optional.empty();
+        this.usesVirtualThreads = virtualThreads.isPresent();
+        this.callbacks = new MonitoredExecutor("callbacks", newPlatformPool("callbacks-", CALLBACK_THREADS));
+        this.blocking = new MonitoredExecutor("blocking", virtualThreads.orElseGet(() -> newPlatformPool("blocking-", BLOCKING_THREADS)));
+    }
+
+    /**
+     * @return The executor of the short tasks, which must not block
+     */
+    public Executor callbacks() {
+        return callbacks;
+    }
+
+    /**
+     * @return The executor of the tasks that may block
+     */
+    public Executor blocking() {
+        return blocking;
+    }
+
+    /**
+     * @return An executor running the short tasks on the callbacks pool once the delay has elapsed
+     */
+    public Executor delayed(long delayMillis) {
+        return CompletableFuture.delayedExecutor(delayMillis, TimeUnit.MILLISECONDS, callbacks);
+    }
+
+    public List<MonitoredExecutor> getAll() {
+        return List.of(callbacks, blocking);
+    }
+
+    public boolean usesVirtualThreads() {
+        return usesVirtualThreads;
+    }
+
+    /**
+     * Stop accepting new tasks, letting the submitted ones finish.
+     */
+    public void close() {
+        callbacks.shutdown();
+        blocking.shutdown();
+    }
+
+    /**
+     * The threads are created when needed and released after a minute without work.
+     */
+    private static ExecutorService newPlatformPool(String name, int threads) {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(
+                threads, threads,
+                KEEP_ALIVE.toMillis(), TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(),
+                new NamedThreadFactory(THREAD_PREFIX + name)
+        );
+        pool.allowCoreThreadTimeOut(true);
+        return pool;
+    }
+
+    /**
+     * The plugin is built for Java 17, the virtual threads of Java 21 are looked up at runtime.
+     *
+     * @return An executor starting a named virtual thread per task, or empty if the JVM does not support them
+     */
+    private static Optional<ExecutorService> newVirtualThreadExecutor(String name) {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, THREAD_PREFIX + name, 1L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            return Optional.of((ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, threadFactory));
+        } catch (ReflectiveOperationException | ClassCastException e) {
+            return Optional.empty();
+        }
+    }
+}
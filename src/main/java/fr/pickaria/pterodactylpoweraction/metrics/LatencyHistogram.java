@@ -0,0 +1,69 @@
+package fr.pickaria.pterodactylpoweraction.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of durations over buckets growing exponentially, each power of two being split in eight, from about
+ * sixteen microseconds to about eighteen minutes.
+ * The smallest buckets tell apart the probes of local servers, which answer in a fraction of a millisecond.
+ * Recording only increments counters, it neither allocates nor locks.
+ */
+public final class LatencyHistogram {
+    private static final int SMALLEST_MAGNITUDE = 14; // 2^14 ns, about 16 microseconds
+    private static final int LARGEST_MAGNITUDE = 39; // 2^39 ns, about 9 minutes
+    private static final int SUB_BUCKETS = 8;
+    static final int BUCKETS = 1 + (LARGEST_MAGNITUDE - SMALLEST_MAGNITUDE + 1) * SUB_BUCKETS;
+    private static final long[] UPPER_BOUNDS = new long[BUCKETS];
+
+    static {
+        UPPER_BOUNDS[0] = 1L << SMALLEST_MAGNITUDE;
+        for (int i = 1; i < BUCKETS; i++) {
+            int magnitude = SMALLEST_MAGNITUDE + (i - 1) / SUB_BUCKETS;
+            long width = (1L << magnitude) / SUB_BUCKETS;
+            UPPER_BOUNDS[i] = (1L << magnitude) + width * ((i - 1) % SUB_BUCKETS + 1);
+        }
+    }
+
+    /**
+     * The last slot counts the durations beyond the largest bucket.
+     */
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 1);
+    private final LongAdder sum = new LongAdder();
+
+    public void record(long nanos) {
+        counts.incrementAndGet(getIndex(Math.max(nanos, 0)));
+        sum.add(Math.max(nanos, 0));
+    }
+
+    /**
+     * @return The upper bound of the bucket in nanoseconds
+     */
+    static long getUpperBound(int bucket) {
+        return UPPER_BOUNDS[bucket];
+    }
+
+    /**
+     * @return The number of durations recorded in the bucket, or beyond the largest bucket if given {@link #BUCKETS}
+     */
+    long getCount(int bucket) {
+        return counts.get(bucket);
+    }
+
+    long getSum() {
+        return sum.sum();
+    }
+
+    private static int getIndex(long nanos) {
+        if (nanos < UPPER_BOUNDS[0]) {
+            return 0;
+        }
+
+        int magnitude = 63 - Long.numberOfLeadingZeros(nanos);
+        if (magnitude > LARGEST_MAGNITUDE) {
+            return BUCKETS;
+        }
+        int subBucket = (int) ((nanos - (1L << magnitude)) / ((1L << magnitude) / SUB_BUCKETS));
+        return 1 + (magnitude - SMALLEST_MAGNITUDE) * SUB_BUCKETS + subBucket;
+    }
+}
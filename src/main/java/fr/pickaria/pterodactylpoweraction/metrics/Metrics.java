@@ -0,0 +1,152 @@
+package fr.pickaria.pterodactylpoweraction.metrics;
+
+import fr.pickaria.pterodactylpoweraction.ServerRegistry;
+import fr.pickaria.pterodactylpoweraction.ServerState;
+import fr.pickaria.pterodactylpoweraction.executor.MonitoredExecutor;
+import fr.pickaria.pterodactylpoweraction.executor.PluginExecutors;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Counters and latency histograms of the plugin, written in the Prometheus text format.
+ * Recording never allocates once the metrics of a server exist, the work of formatting is left to the scrapes.
+ */
+public class Metrics {
+    private static final int STATUS_CODES = 600;
+    private static final double NANOS_PER_SECOND = 1_000_000_000d;
+
+    private final ServerRegistry serverRegistry;
+    private final PluginExecutors executors;
+    private final Map<String, ServerMetrics> servers = new ConcurrentHashMap<>();
+    private final LatencyHistogram panelRequestLatency = new LatencyHistogram();
+    private final AtomicLongArray panelResponses = new AtomicLongArray(STATUS_CODES);
+    private final LongAdder panelRequestFailures = new LongAdder();
+
+    public Metrics(ServerRegistry serverRegistry, PluginExecutors executors) {
+        this.serverRegistry = serverRegistry;
+        this.executors = executors;
+    }
+
+    public ServerMetrics getServer(String serverName) {
+        ServerMetrics serverMetrics = servers.get(serverName);
+        if (serverMetrics == null) {
+            serverMetrics = servers.computeIfAbsent(serverName, name -> new ServerMetrics());
+        }
+        return serverMetrics;
+    }
+
+    /**
+     * Record a response of the panel, including the ones rejected by its rate limit.
+     */
+    public void recordPanelResponse(int statusCode, long nanos) {
+        panelRequestLatency.record(nanos);
+        if (statusCode >= 0 && statusCode < STATUS_CODES) {
+            panelResponses.incrementAndGet(statusCode);
+        }
+    }
+
+    /**
+     * Record a request to the panel that did not get a response.
+     */
+    public void recordPanelFailure(long nanos) {
+        panelRequestLatency.record(nanos);
+        panelRequestFailures.increment();
+    }
+
+    public void write(StringBuilder out) {
+        Map<String, ServerMetrics> servers = new TreeMap<>(this.servers);
+
+        writeHeader(out, "ppa_power_action_seconds", "histogram", "Time taken by the API to acknowledge a power action");
+        servers.forEach((name, metrics) -> {
+            writeHistogram(out, "ppa_power_action_seconds", "server=\"" + escape(name) + "\",action=\"start\"", metrics.startLatency);
+            writeHistogram(out, "ppa_power_action_seconds", "server=\"" + escape(name) + "\",action=\"stop\"", metrics.stopLatency);
+        });
+
+        writeHeader(out, "ppa_power_action_failures_total", "counter", "Power actions refused by the API or that could not be sent");
+        servers.forEach((name, metrics) -> {
+            writeSample(out, "ppa_power_action_failures_total", "server=\"" + escape(name) + "\",action=\"start\"", metrics.startFailures.sum());
+            writeSample(out, "ppa_power_action_failures_total", "server=\"" + escape(name) + "\",action=\"stop\"", metrics.stopFailures.sum());
+        });
+
+        writeServerHistograms(out, servers, "ppa_cold_start_seconds", "Time between a player asking for a stopped server and the server being up", metrics -> metrics.coldStartLatency);
+        writeServerHistograms(out, servers, "ppa_redirect_seconds", "Time taken to move a waiting player to the server once it is up", metrics -> metrics.redirectLatency);
+        writeServerHistograms(out, servers, "ppa_reachability_probe_seconds", "Time taken by the reachability probes", metrics -> metrics.probeLatency);
+
+        writeHeader(out, "ppa_panel_request_seconds", "histogram", "Time taken by the panel to answer a request");
+        writeHistogram(out, "ppa_panel_request_seconds", "", panelRequestLatency);
+
+        writeHeader(out, "ppa_panel_responses_total", "counter", "Responses of the panel by status code");
+        for (int statusCode = 0; statusCode < STATUS_CODES; statusCode++) {
+            long count = panelResponses.get(statusCode);
+            if (count > 0) {
+                writeSample(out, "ppa_panel_responses_total", "code=\"" + statusCode + "\"", count);
+            }
+        }
+
+        writeHeader(out, "ppa_panel_request_failures_total", "counter", "Requests to the panel that did not get a response");
+        writeSample(out, "ppa_panel_request_failures_total", "", panelRequestFailures.sum());
+
+        writeHeader(out, "ppa_server_state", "gauge", "Current state of each server, as seen by the plugin");
+        new TreeMap<>(serverRegistry.getStates()).forEach((name, state) -> {
+            for (ServerState candidate : ServerState.values()) {
+                String labels = "server=\"" + escape(name) + "\",state=\"" + candidate.name().toLowerCase() + "\"";
+                writeSample(out, "ppa_server_state", labels, candidate == state ? 1 : 0);
+            }
+        });
+
+        List<MonitoredExecutor> executors = this.executors.getAll();
+        writeHeader(out, "ppa_executor_queued_tasks", "gauge", "Tasks waiting for a thread of the plugin's executors");
+        executors.forEach(executor -> writeSample(out, "ppa_executor_queued_tasks", "executor=\"" + executor.getName() + "\"", executor.getQueuedTasks()));
+        writeHeader(out, "ppa_executor_active_tasks", "gauge", "Tasks being run by the plugin's executors");
+        executors.forEach(executor -> writeSample(out, "ppa_executor_active_tasks", "executor=\"" + executor.getName() + "\"", executor.getActiveTasks()));
+        writeHeader(out, "ppa_executor_tasks_total", "counter", "Tasks run by the plugin's executors");
+        executors.forEach(executor -> writeSample(out, "ppa_executor_tasks_total", "executor=\"" + executor.getName() + "\"", executor.getCompletedTasks()));
+    }
+
+    private static void writeServerHistograms(StringBuilder out, Map<String, ServerMetrics> servers, String name, String help, Function<ServerMetrics, LatencyHistogram> histogram) {
+        writeHeader(out, name, "histogram", help);
+        servers.forEach((serverName, metrics) -> writeHistogram(out, name, "server=\"" + escape(serverName) + "\"", histogram.apply(metrics)));
+    }
+
+    private static void writeHeader(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void writeHistogram(StringBuilder out, String name, String labels, LatencyHistogram histogram) {
+        String separator = labels.isEmpty() ? "" : ",";
+        long cumulativeCount = 0;
+        for (int bucket = 0; bucket < LatencyHistogram.BUCKETS; bucket++) {
+            cumulativeCount += histogram.getCount(bucket);
+            String upperBound = Double.toString(LatencyHistogram.getUpperBound(bucket) / NANOS_PER_SECOND);
+            writeSample(out, name + "_bucket", labels + separator + "le=\"" + upperBound + "\"", cumulativeCount);
+        }
+        cumulativeCount += histogram.getCount(LatencyHistogram.BUCKETS);
+        writeSample(out, name + "_bucket", labels + separator + "le=\"+Inf\"", cumulativeCount);
+
+        out.append(name).append("_sum");
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(histogram.getSum() / NANOS_PER_SECOND).append('\n');
+        writeSample(out, name + "_count", labels, cumulativeCount);
+    }
+
+    private static void writeSample(StringBuilder out, String name, String labels, long value) {
+        out.append(name);
+        if (!labels.isEmpty()) {
+            out.append('{').append(labels).append('}');
+        }
+        out.append(' ').append(value).append('\n');
+    }
+
+    private static String escape(String labelValue) {
+        return labelValue.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,87 @@
+package fr.pickaria.pterodactylpoweraction.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import fr.pickaria.pterodactylpoweraction.Configuration;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Serves the metrics to Prometheus on {@code /metrics}, using the HTTP server of the JDK.
+ */
+public class MetricsServer {
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final Metrics metrics;
+    private final Logger logger;
+    private HttpServer httpServer;
+    private ExecutorService executor;
+
+    public MetricsServer(Metrics metrics, Logger logger) {
+        this.metrics = metrics;
+        this.logger = logger;
+    }
+
+    /**
+     * Start the server if a port is configured.
+     */
+    public synchronized void initialize(Configuration configuration) {
+        if (configuration.getMetricsPort() <= 0 || httpServer != null) {
+            return;
+        }
+
+        InetSocketAddress address = new InetSocketAddress(configuration.getMetricsAddress(), configuration.getMetricsPort());
+        try {
+            httpServer = HttpServer.create(address, 0);
+        } catch (IOException e) {
+            logger.error("Could not start the metrics server on {}", address, e);
+            return;
+        }
+
+        // A single thread is enough for a scraper, and keeps the scrapes off the proxy's threads
+        executor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "PterodactylPowerAction Metrics");
+            thread.setDaemon(true);
+            return thread;
+        });
+        httpServer.setExecutor(executor);
+        httpServer.createContext("/metrics", this::handle);
+        httpServer.start();
+        logger.info("Serving metrics on http://{}:{}/metrics", configuration.getMetricsAddress(), configuration.getMetricsPort());
+    }
+
+    public synchronized void close() {
+        if (httpServer == null) {
+            return;
+        }
+
+        httpServer.stop(0);
+        executor.shutdown();
+        httpServer = null;
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+
+            StringBuilder out = new StringBuilder();
+            metrics.write(out);
+            byte[] body = out.toString().getBytes(StandardCharsets.UTF_8);
+
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream responseBody = exchange.getResponseBody()) {
+                responseBody.write(body);
+            }
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package fr.pickaria.pterodactylpoweraction.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latencies and failures measured for a single server.
+ */
+public final class ServerMetrics {
+    final LatencyHistogram startLatency = new LatencyHistogram();
+    final LatencyHistogram stopLatency = new LatencyHistogram();
+    final LongAdder startFailures = new LongAdder();
+    final LongAdder stopFailures = new LongAdder();
+    final LatencyHistogram coldStartLatency = new LatencyHistogram();
+    final LatencyHistogram redirectLatency = new LatencyHistogram();
+    final LatencyHistogram probeLatency = new LatencyHistogram();
+
+    ServerMetrics() {
+    }
+
+    /**
+     * Record a start request sent to the API, from the call until the API acknowledged or refused it.
+     */
+    public void recordStart(long nanos, boolean isSuccessful) {
+        startLatency.record(nanos);
+        if (!isSuccessful) {
+            startFailures.increment();
+        }
+    }
+
+    /**
+     * Record a stop request sent to the API, from the call until the API acknowledged or refused it.
+     */
+    public void recordStop(long nanos, boolean isSuccessful) {
+        stopLatency.record(nanos);
+        if (!isSuccessful) {
+            stopFailures.increment();
+        }
+    }
+
+    /**
+     * Record the time between a player asking for the stopped server and the server answering its first probe.
+     */
+    public void recordColdStart(long nanos) {
+        coldStartLatency.record(nanos);
+    }
+
+    /**
+     * Record the time taken to move a waiting player to the server once it is up.
+     */
+    public void recordRedirect(long nanos) {
+        redirectLatency.record(nanos);
+    }
+
+    public void recordProbe(long nanos) {
+        probeLatency.record(nanos);
+    }
+}
@@ -0,0 +1,85 @@
+package fr.pickaria.pterodactylpoweraction.online;
+
+import fr.pickaria.pterodactylpoweraction.OnlineChecker;
+import fr.pickaria.pterodactylpoweraction.executor.PluginExecutors;
+import org.slf4j.Logger;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Pattern;
+
+/**
+ * Considers a server up as soon as its console prints the line telling the world is loaded, which comes before the
+ * first successful ping and after Pterodactyl reports the server as running.
+ * The other checker is kept as a fallback, for when the line does not show up or the socket cannot be opened.
+ */
+public class ConsoleReadinessChecker implements OnlineChecker {
+    /**
+     * Time given to the line once the fallback reports the server as up, before the server is considered up anyway.
+     */
+    private static final Duration FALLBACK_DELAY = Duration.ofSeconds(5);
+
+    private final String serverName;
+    private final String serverIdentifier;
+    private final Pattern pattern;
+    private final PterodactylStatusStream statusStream;
+    private final OnlineChecker fallback;
+    private final PluginExecutors executors;
+    private final Logger logger;
+
+    /**
+     * @param serverName       Name of the server, for the logs
+     * @param serverIdentifier Pterodactyl identifier of the server, whose socket forwards the console output
+     * @param pattern          Pattern found in the line printed once the server is ready
+     * @param fallback         Checker used when the line does not show up
+     */
+    public ConsoleReadinessChecker(String serverName, String serverIdentifier, Pattern pattern, PterodactylStatusStream statusStream, OnlineChecker fallback, PluginExecutors executors, Logger logger) {
+        this.serverName = serverName;
+        this.serverIdentifier = serverIdentifier;
+        this.pattern = pattern;
+        this.statusStream = statusStream;
+        this.fallback = fallback;
+        this.executors = executors;
+        this.logger = logger;
+    }
+
+    @Override
+    public CompletableFuture<Void> waitForRunning() {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        // The socket is only opened once the server is started, and kept open afterward
+        CompletableFuture<Void> consoleLine = statusStream.subscribe(serverIdentifier).awaitConsoleLine(pattern);
+        consoleLine.thenRun(() -> result.complete(null));
+
+        fallback.waitForRunning().whenComplete((ignored, throwable) -> {
+            if (throwable != null) {
+                result.completeExceptionally(throwable);
+                return;
+            }
+
+            executors.delayed(FALLBACK_DELAY.toMillis()).execute(() -> {
+                if (result.complete(null)) {
+                    logger.warn("Server '{}' is up but its console did not print a line matching '{}', check the ready pattern of the server.", serverName, pattern.pattern());
+                }
+            });
+        });
+
+        // Stop listening to the console once the server is up or failed to start
+        result.whenComplete((ignored, throwable) -> consoleLine.cancel(false));
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Void> waitForStopped() {
+        return fallback.waitForStopped();
+    }
+
+    @Override
+    public CompletableFuture<Boolean> checkRunning() {
+        return fallback.checkRunning();
+    }
+
+    @Override
+    public boolean isRunningNow() {
+        return fallback.isRunningNow();
+    }
+}
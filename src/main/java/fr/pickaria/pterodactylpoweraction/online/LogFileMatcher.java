@@ -0,0 +1,100 @@
+package fr.pickaria.pterodactylpoweraction.online;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Objects;
+import java.util.regex.Pattern;
+
+/**
+ * Looks for a line in what a server appends to its log file, following the file when the server replaces it on boot.
+ * Only complete lines are read, the file is not kept open between two reads.
+ */
+class LogFileMatcher {
+    /**
+     * Maximum number of bytes read at once, longer lines are skipped.
+     */
+    private static final int MAXIMUM_READ = 1 << 20;
+
+    private final Path file;
+    private final Pattern pattern;
+    private Object fileKey;
+    private long position;
+
+    /**
+     * The lines already in the file come from the previous run of the server, they are skipped.
+     */
+    LogFileMatcher(Path file, Pattern pattern) {
+        this.file = file;
+        this.pattern = pattern;
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+            fileKey = attributes.fileKey();
+            position = attributes.size();
+        } catch (IOException e) {
+            // The file will be created by the server
+            fileKey = null;
+            position = 0;
+        }
+    }
+
+    /**
+     * Read the lines appended since the last call.
+     *
+     * @return true if one of them matches the pattern
+     */
+    boolean poll() {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            return false;
+        }
+
+        // The server moves the previous log file away on boot and starts a new one
+        if (!Objects.equals(attributes.fileKey(), fileKey) || attributes.size() < position) {
+            fileKey = attributes.fileKey();
+            position = 0;
+        }
+        if (attributes.size() == position) {
+            return false;
+        }
+
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(attributes.size() - position, MAXIMUM_READ));
+        try (SeekableByteChannel channel = Files.newByteChannel(file)) {
+            channel.position(position);
+            int read;
+            do {
+                read = channel.read(buffer);
+            } while (read > 0 && buffer.hasRemaining());
+        } catch (IOException e) {
+            return false;
+        }
+
+        byte[] bytes = buffer.array();
+        int length = buffer.position();
+        int end = length - 1;
+        while (end >= 0 && bytes[end] != '\n') {
+            end--;
+        }
+        if (end < 0) {
+            // Wait for the line to be complete, unless it does not even fit in the buffer
+            if (length == MAXIMUM_READ) {
+                position += length;
+            }
+            return false;
+        }
+
+        position += end + 1;
+        for (String line : new String(bytes, 0, end, StandardCharsets.UTF_8).split("\n")) {
+            if (pattern.matcher(line).find()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
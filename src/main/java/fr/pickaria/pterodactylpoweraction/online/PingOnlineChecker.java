@@ -2,57 +2,131 @@ package fr.pickaria.pterodactylpoweraction.online;
 
 import com.velocitypowered.api.proxy.server.PingOptions;
 import com.velocitypowered.api.proxy.server.RegisteredServer;
+import com.velocitypowered.api.proxy.server.ServerPing;
 import fr.pickaria.pterodactylpoweraction.Configuration;
 import fr.pickaria.pterodactylpoweraction.OnlineChecker;
+import fr.pickaria.pterodactylpoweraction.executor.PluginExecutors;
 
 import java.time.Duration;
-import java.time.Instant;
 import java.util.concurrent.CompletableFuture;
-import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
 public class PingOnlineChecker implements OnlineChecker {
-    private static final Duration PING_TIMEOUT = Duration.ofSeconds(1);
-    private static final PingOptions PING_OPTIONS = PingOptions.builder().timeout(PING_TIMEOUT).build();
+    private static final Duration INITIAL_RETRY_DELAY = Duration.ofMillis(250);
+    private static final Duration MAXIMUM_RETRY_DELAY = Duration.ofSeconds(2);
+    private static final double RETRY_DELAY_MULTIPLIER = 1.5;
+    /**
+     * Share of the typical boot time to wait before the first ping, so that fast boots are still caught early.
+     */
+    private static final double INITIAL_DELAY_RATIO = 0.8;
     private final RegisteredServer server;
     private final Configuration configuration;
+    private final PingStatistics.Timings timings;
+    private final PluginExecutors executors;
 
-    public PingOnlineChecker(RegisteredServer server, Configuration configuration) {
+    public PingOnlineChecker(RegisteredServer server, Configuration configuration, PingStatistics.Timings timings, PluginExecutors executors) {
         this.server = server;
         this.configuration = configuration;
+        this.timings = timings;
+        this.executors = executors;
     }
 
     @Override
     public CompletableFuture<Void> waitForRunning() {
-        return CompletableFuture.supplyAsync(() -> {
-            Instant start = Instant.now();
-
-            while (Instant.now().isBefore(start.plus(configuration.getMaximumPingDuration()))) {
-                try {
-                    // Block and wait for the ping to complete
-                    server.ping(PING_OPTIONS).get();
-                    return null;
-                } catch (InterruptedException | ExecutionException e) {
-                    // Ping failed or interrupted, wait for a bit before retrying
-                    try {
-                        Thread.sleep(500);
-                    } catch (InterruptedException ignored) {
-                    }
-                }
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        long startedAt = System.nanoTime();
+        Duration maximumDuration = configuration.getMaximumPingDuration();
+        long deadline = startedAt + maximumDuration.toNanos();
+
+        // The server may already be up, for instance when its start was skipped as redundant
+        ping().whenComplete((ping, throwable) -> {
+            if (throwable == null) {
+                result.complete(null);
+                return;
             }
 
-            // Max ping duration exceeded without a successful ping
-            throw new CompletionException(new TimeoutException("Max ping duration exceeded"));
+            // Don't bother pinging again before the server usually finishes booting
+            long initialDelay = Math.min(
+                    (long) (timings.getTypicalBootTime().toMillis() * INITIAL_DELAY_RATIO),
+                    maximumDuration.toMillis() / 2
+            );
+            long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+            schedule(() -> attempt(result, true, deadline, INITIAL_RETRY_DELAY.toMillis()), Math.max(0, initialDelay - elapsed));
         });
+
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Void> waitForStopped() {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        long deadline = System.nanoTime() + configuration.getMaximumPingDuration().toNanos();
+        attempt(result, false, deadline, INITIAL_RETRY_DELAY.toMillis());
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Boolean> checkRunning() {
+        return ping().handle((ping, throwable) -> throwable == null);
     }
 
     @Override
     public boolean isRunningNow() {
         try {
-            return server.ping(PING_OPTIONS).handle((ping, throwable) -> throwable == null).get();
+            return checkRunning().get();
         } catch (InterruptedException | ExecutionException e) {
             return false;
         }
     }
+
+    /**
+     * Ping the server once, then schedule the next attempt if it is not in the expected state yet.
+     * No thread is held between two attempts.
+     *
+     * @param expectRunning true to wait for a successful ping, false to wait for a failed one
+     */
+    private void attempt(CompletableFuture<Void> result, boolean expectRunning, long deadline, long retryDelay) {
+        if (result.isDone()) {
+            return;
+        }
+
+        ping().whenComplete((ping, throwable) -> {
+            boolean isRunning = throwable == null;
+            if (isRunning == expectRunning) {
+                result.complete(null);
+                return;
+            }
+
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            if (remaining <= 0) {
+                // Max ping duration exceeded without reaching the expected state
+                result.completeExceptionally(new TimeoutException("Max ping duration exceeded"));
+                return;
+            }
+
+            long nextRetryDelay = Math.min((long) (retryDelay * RETRY_DELAY_MULTIPLIER), MAXIMUM_RETRY_DELAY.toMillis());
+            schedule(() -> attempt(result, expectRunning, deadline, nextRetryDelay), Math.min(retryDelay, remaining));
+        });
+    }
+
+    private CompletableFuture<ServerPing> ping() {
+        Duration timeout = timings.getPingTimeout();
+        PingOptions options = PingOptions.builder().timeout(timeout).build();
+        long sentAt = System.nanoTime();
+        return server.ping(options).whenComplete((ping, throwable) -> {
+            long elapsed = System.nanoTime() - sentAt;
+            if (throwable == null) {
+                timings.recordRoundTrip(Duration.ofNanos(elapsed));
+            } else if (elapsed >= timeout.toNanos()) {
+                // A refused connection fails right away, only a ping left unanswered lasts until the timeout
+                timings.recordTimeout();
+            }
+        });
+    }
+
+    private void schedule(Runnable runnable, long delayMillis) {
+        executors.delayed(delayMillis).execute(runnable);
+    }
 }
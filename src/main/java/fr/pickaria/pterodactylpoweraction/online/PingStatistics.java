@@ -0,0 +1,81 @@
+package fr.pickaria.pterodactylpoweraction.online;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Timings learned from the pings of each server, kept across checks so that readiness probing adapts to how long a
+ * server usually takes to boot and how fast it answers.
+ */
+public class PingStatistics {
+    private final Map<String, Timings> timings = new ConcurrentHashMap<>();
+
+    public Timings get(String serverName) {
+        return timings.computeIfAbsent(serverName, name -> new Timings());
+    }
+
+    public static class Timings {
+        private static final Duration DEFAULT_PING_TIMEOUT = Duration.ofSeconds(1);
+        private static final Duration MINIMUM_PING_TIMEOUT = Duration.ofMillis(200);
+        private static final Duration MAXIMUM_PING_TIMEOUT = Duration.ofSeconds(3);
+        /**
+         * Number of doublings after which any timeout reaches the maximum one.
+         */
+        private static final int MAXIMUM_TIMEOUT_BACKOFF = 4;
+        private static final double BOOT_TIME_WEIGHT = 0.3;
+
+        private long bootTimeMillis = -1;
+        private long smoothedRoundTripMillis = -1;
+        private long roundTripVarianceMillis = 0;
+        private int timeoutBackoff = 0;
+
+        /**
+         * @return The typical time between the start request and the first successful ping, zero if never measured
+         */
+        public synchronized Duration getTypicalBootTime() {
+            return Duration.ofMillis(Math.max(bootTimeMillis, 0));
+        }
+
+        /**
+         * Timeout derived from the observed round-trip times, the same way TCP computes its retransmission timeout.
+         * It is doubled after each ping that timed out, so that a server answering slower than usual is still measured.
+         *
+         * @return The duration after which a ping should be considered failed
+         */
+        public synchronized Duration getPingTimeout() {
+            long timeout = smoothedRoundTripMillis < 0
+                    ? DEFAULT_PING_TIMEOUT.toMillis()
+                    : Math.max(smoothedRoundTripMillis + 4 * roundTripVarianceMillis, MINIMUM_PING_TIMEOUT.toMillis());
+            return Duration.ofMillis(Math.min(timeout << timeoutBackoff, MAXIMUM_PING_TIMEOUT.toMillis()));
+        }
+
+        public synchronized void recordBootTime(Duration duration) {
+            long millis = duration.toMillis();
+            if (bootTimeMillis < 0) {
+                bootTimeMillis = millis;
+            } else {
+                bootTimeMillis = Math.round(BOOT_TIME_WEIGHT * millis + (1 - BOOT_TIME_WEIGHT) * bootTimeMillis);
+            }
+        }
+
+        /**
+         * Back off the timeout after a ping that got no answer in time.
+         */
+        public synchronized void recordTimeout() {
+            timeoutBackoff = Math.min(timeoutBackoff + 1, MAXIMUM_TIMEOUT_BACKOFF);
+        }
+
+        public synchronized void recordRoundTrip(Duration duration) {
+            timeoutBackoff = 0;
+            long millis = duration.toMillis();
+            if (smoothedRoundTripMillis < 0) {
+                smoothedRoundTripMillis = millis;
+                roundTripVarianceMillis = millis / 2;
+            } else {
+                roundTripVarianceMillis = (3 * roundTripVarianceMillis + Math.abs(smoothedRoundTripMillis - millis)) / 4;
+                smoothedRoundTripMillis = (7 * smoothedRoundTripMillis + millis) / 8;
+            }
+        }
+    }
+}
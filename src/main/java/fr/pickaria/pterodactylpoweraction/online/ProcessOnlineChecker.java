@@ -0,0 +1,176 @@
+package fr.pickaria.pterodactylpoweraction.online;
+
+import com.velocitypowered.api.proxy.server.RegisteredServer;
+import fr.pickaria.pterodactylpoweraction.Configuration;
+import fr.pickaria.pterodactylpoweraction.OnlineChecker;
+import fr.pickaria.pterodactylpoweraction.api.ProcessSupervisor;
+import fr.pickaria.pterodactylpoweraction.executor.PluginExecutors;
+import org.slf4j.Logger;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+/**
+ * Checks the servers launched by the plugin through their process, which is known to be gone without a network call.
+ * A running process is up once its port accepts connections and, if a ready pattern is set, once its log file has the
+ * line telling the server is ready.
+ * A supervised server without a live process is known to be down, the other servers the plugin did not launch, such as
+ * the ones started by a command, are pinged instead.
+ */
+public class ProcessOnlineChecker implements OnlineChecker {
+    private static final Duration CONNECT_TIMEOUT = Duration.ofMillis(500);
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(250);
+    /**
+     * Time given to the line once the port accepts connections, before the server is considered up anyway.
+     */
+    private static final Duration LOG_LINE_DELAY = Duration.ofSeconds(5);
+
+    private final String serverName;
+    private final InetSocketAddress address;
+    private final Configuration configuration;
+    private final ProcessSupervisor processSupervisor;
+    private final OnlineChecker fallback;
+    private final Executor pollExecutor;
+    private final PluginExecutors executors;
+    private final Logger logger;
+
+    /**
+     * @param fallback Checker used for the servers whose process is not known
+     */
+    public ProcessOnlineChecker(RegisteredServer server, Configuration configuration, ProcessSupervisor processSupervisor, OnlineChecker fallback, PluginExecutors executors, Logger logger) {
+        this.serverName = server.getServerInfo().getName();
+        this.address = server.getServerInfo().getAddress();
+        this.configuration = configuration;
+        this.processSupervisor = processSupervisor;
+        this.fallback = fallback;
+        Executor delayed = executors.delayed(POLL_INTERVAL.toMillis());
+        // Connecting and reading the log file are blocking, only the delay is left to the callbacks pool
+        this.pollExecutor = task -> delayed.execute(() -> executors.blocking().execute(task));
+        this.executors = executors;
+        this.logger = logger;
+    }
+
+    @Override
+    public CompletableFuture<Void> waitForRunning() {
+        Optional<ProcessHandle> process = processSupervisor.getProcess(serverName);
+        if (process.isEmpty()) {
+            return fallback.waitForRunning();
+        }
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        Optional<LogFileMatcher> logFile = getLogFileMatcher();
+        long startedAt = System.nanoTime();
+        executors.blocking().execute(() -> poll(result, process.get(), logFile, startedAt, -1));
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Void> waitForStopped() {
+        Optional<ProcessHandle> process = processSupervisor.getProcess(serverName);
+        if (process.isEmpty()) {
+            return fallback.waitForStopped();
+        }
+
+        return processSupervisor.awaitExit(process.get(), configuration.getMaximumPingDuration())
+                .thenCompose(exited -> exited
+                        ? CompletableFuture.completedFuture(null)
+                        : CompletableFuture.failedFuture(new TimeoutException("Max ping duration exceeded")));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> checkRunning() {
+        if (processSupervisor.getProcess(serverName).isEmpty()) {
+            return isSupervised() ? CompletableFuture.completedFuture(false) : fallback.checkRunning();
+        }
+        return CompletableFuture.supplyAsync(this::acceptsConnections, executors.blocking());
+    }
+
+    @Override
+    public boolean isRunningNow() {
+        if (processSupervisor.getProcess(serverName).isEmpty()) {
+            return !isSupervised() && fallback.isRunningNow();
+        }
+        return acceptsConnections();
+    }
+
+    /**
+     * A supervised server only runs as the process launched by the plugin, there is nothing to ping without it.
+     */
+    private boolean isSupervised() {
+        return configuration.getPowerCommands(serverName)
+                .map(Configuration.PowerCommands::supervised)
+                .orElse(false);
+    }
+
+    /**
+     * Check the process once, then schedule the next check if the server is not up yet.
+     *
+     * @param listeningSince Time at which the port was first seen accepting connections, or -1
+     */
+    private void poll(CompletableFuture<Void> result, ProcessHandle process, Optional<LogFileMatcher> logFile, long startedAt, long listeningSince) {
+        if (result.isDone()) {
+            return;
+        }
+        if (!process.isAlive()) {
+            result.completeExceptionally(new IllegalStateException("The process of server " + serverName + " exited while starting"));
+            return;
+        }
+
+        long now = System.nanoTime();
+        if (listeningSince < 0 && acceptsConnections()) {
+            listeningSince = now;
+        }
+        if (listeningSince >= 0) {
+            if (logFile.isEmpty() || logFile.get().poll()) {
+                result.complete(null);
+                return;
+            }
+            if (now - listeningSince > LOG_LINE_DELAY.toNanos()) {
+                logger.warn("Server '{}' is up but its log file has no line matching '{}', check the ready pattern of the server.", serverName, configuration.getConsoleReadyPattern(serverName).map(Pattern::pattern).orElse(""));
+                result.complete(null);
+                return;
+            }
+        }
+
+        if (now - startedAt > configuration.getMaximumPingDuration().toNanos()) {
+            result.completeExceptionally(new TimeoutException("Max ping duration exceeded"));
+            return;
+        }
+
+        long nextListeningSince = listeningSince;
+        pollExecutor.execute(() -> poll(result, process, logFile, startedAt, nextListeningSince));
+    }
+
+    private Optional<LogFileMatcher> getLogFileMatcher() {
+        Optional<Pattern> pattern = configuration.getConsoleReadyPattern(serverName);
+        Optional<Configuration.PowerCommands> powerCommands = configuration.getPowerCommands(serverName);
+        if (pattern.isEmpty() || powerCommands.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Path logFile = powerCommands.get().workingDirectory()
+                .map(directory -> Path.of(directory).resolve(powerCommands.get().logFile()))
+                .orElseGet(() -> Path.of(powerCommands.get().logFile()));
+        return Optional.of(new LogFileMatcher(logFile, pattern.get()));
+    }
+
+    /**
+     * The server is local, connecting to it takes a fraction of the time of a ping.
+     */
+    private boolean acceptsConnections() {
+        try (Socket socket = new Socket()) {
+            socket.connect(address, (int) CONNECT_TIMEOUT.toMillis());
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package fr.pickaria.pterodactylpoweraction.online;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonObject;
+import fr.pickaria.pterodactylpoweraction.api.PterodactylClient;
+import fr.pickaria.pterodactylpoweraction.api.RequestPriority;
+
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Caches the WebSocket credentials of each server until they are about to expire.
+ * Concurrent requests for the same server share a single call to the panel.
+ */
+public class PterodactylCredentialCache {
+    /**
+     * Lifetime assumed when the token does not tell when it expires, Wings issues tokens valid for 10 minutes.
+     */
+    private static final Duration DEFAULT_LIFETIME = Duration.ofMinutes(10);
+    private static final Duration EXPIRY_MARGIN = Duration.ofMinutes(1);
+
+    private final Gson gson = new Gson();
+    private final PterodactylClient client;
+    private final Map<String, Credentials> credentials = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Credentials>> requests = new ConcurrentHashMap<>();
+
+    public PterodactylCredentialCache(PterodactylClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Get credentials for the server, only calling the panel if the cached ones are missing or about to expire.
+     *
+     * @param serverIdentifier The Pterodactyl identifier of the server
+     * @return A future completing with valid credentials
+     */
+    public CompletableFuture<Credentials> get(String serverIdentifier) {
+        Credentials cached = credentials.get(serverIdentifier);
+        if (cached != null && cached.expiresAt().minus(EXPIRY_MARGIN).isAfter(Instant.now())) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        return refresh(serverIdentifier);
+    }
+
+    /**
+     * Fetch new credentials for the server, joining the request already in flight if there is one.
+     *
+     * @param serverIdentifier The Pterodactyl identifier of the server
+     * @return A future completing with the new credentials
+     */
+    public CompletableFuture<Credentials> refresh(String serverIdentifier) {
+        CompletableFuture<Credentials> promise = new CompletableFuture<>();
+        CompletableFuture<Credentials> inFlight = requests.putIfAbsent(serverIdentifier, promise);
+        if (inFlight != null) {
+            return inFlight;
+        }
+
+        CompletableFuture<Credentials> request;
+        try {
+            request = fetch(serverIdentifier);
+        } catch (RuntimeException exception) {
+            request = CompletableFuture.failedFuture(exception);
+        }
+
+        request.whenComplete((fetched, throwable) -> {
+            if (throwable == null) {
+                credentials.put(serverIdentifier, fetched);
+            }
+            requests.remove(serverIdentifier, promise);
+            if (throwable == null) {
+                promise.complete(fetched);
+            } else {
+                promise.completeExceptionally(throwable);
+            }
+        });
+
+        return promise;
+    }
+
+    /**
+     * Forget the credentials of the server, for instance when the panel rejected them.
+     */
+    public void invalidate(String serverIdentifier) {
+        credentials.remove(serverIdentifier);
+    }
+
+    private CompletableFuture<Credentials> fetch(String serverIdentifier) {
+        HttpRequest request = client.newRequest("/servers/" + serverIdentifier + "/websocket").GET().build();
+
+        // Waiting for a server to start depends on its status stream
+        return client.send(request, HttpResponse.BodyHandlers.ofString(), RequestPriority.PLAYER)
+                .thenApply(response -> {
+                    int statusCode = response.statusCode();
+                    if (statusCode < 200 || statusCode >= 300) {
+                        throw new IllegalStateException("Unexpected status: " + statusCode + " – " + response.body());
+                    }
+                    PterodactylWebSocketCredentialsResponse.Data data = gson.fromJson(response.body(), PterodactylWebSocketCredentialsResponse.class).getData();
+                    return new Credentials(data.getToken(), data.getSocket(), getExpiry(data.getToken()));
+                });
+    }
+
+    /**
+     * Read the expiry date from the claims of the token.
+     */
+    private Instant getExpiry(String token) {
+        try {
+            String[] parts = token.split("\\.");
+            String claims = new String(Base64.getUrlDecoder().decode(parts[1]), StandardCharsets.UTF_8);
+            JsonObject json = gson.fromJson(claims, JsonObject.class);
+            if (json.has("exp")) {
+                return Instant.ofEpochSecond(json.get("exp").getAsLong());
+            }
+        } catch (RuntimeException ignored) {
+            // Not a JWT we understand, assume the default lifetime
+        }
+        return Instant.now().plus(DEFAULT_LIFETIME);
+    }
+
+    public record Credentials(String token, String socket, Instant expiresAt) {
+    }
+}
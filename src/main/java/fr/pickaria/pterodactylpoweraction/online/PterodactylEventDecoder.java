@@ -0,0 +1,434 @@
+package fr.pickaria.pterodactylpoweraction.online;
+
+import java.util.Optional;
+
+/**
+ * Decodes the messages sent by Wings on the status sockets, such as {@code {"event":"status","args":["running"]}},
+ * without building them as objects.
+ * Only the name of the event is read up front, so that the stats and console output sent continuously by running
+ * servers are skipped without allocating anything. The arguments are only read when asked for.
+ * <p>
+ * An instance keeps the position of the message being read, so it must not be shared between sockets.
+ */
+class PterodactylEventDecoder {
+    enum Event {
+        AUTH_SUCCESS("auth success"),
+        STATUS("status"),
+        STATS("stats"),
+        CONSOLE_OUTPUT("console output"),
+        TOKEN_EXPIRING("token expiring"),
+        TOKEN_EXPIRED("token expired"),
+        JWT_ERROR("jwt error"),
+        /**
+         * Any event the plugin does not handle.
+         */
+        OTHER(null);
+
+        private static final Event[] HANDLED = {AUTH_SUCCESS, STATUS, STATS, CONSOLE_OUTPUT, TOKEN_EXPIRING, TOKEN_EXPIRED, JWT_ERROR};
+
+        private final String eventName;
+
+        Event(String eventName) {
+            this.eventName = eventName;
+        }
+    }
+
+    private static final String EVENT_KEY = "event";
+    private static final String ARGS_KEY = "args";
+    private static final String CPU_KEY = "cpu_absolute";
+    private static final String MEMORY_KEY = "memory_bytes";
+    private static final String NETWORK_KEY = "network";
+    private static final String RX_KEY = "rx_bytes";
+    private static final String TX_KEY = "tx_bytes";
+
+    private CharSequence text;
+    private int position;
+    private int argumentsPosition;
+
+    /**
+     * Read the name of the event of the message, leaving the rest of it for {@link #readFirstArgument()}.
+     * The message must not change until it has been read.
+     *
+     * @param text A complete message
+     * @return The event of the message, {@link Event#OTHER} if it is not handled or has no event
+     * @throws IllegalArgumentException If the message is not a JSON object
+     */
+    Event decode(CharSequence text) throws IllegalArgumentException {
+        this.text = text;
+        this.position = 0;
+        this.argumentsPosition = -1;
+
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            return Event.OTHER;
+        }
+
+        while (true) {
+            int keyStart = position + 1;
+            int keyEnd = skipString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+
+            if (regionEquals(keyStart, keyEnd, EVENT_KEY)) {
+                return readEvent();
+            }
+            if (regionEquals(keyStart, keyEnd, ARGS_KEY)) {
+                argumentsPosition = position;
+            }
+            skipValue();
+
+            if (!skipSeparator()) {
+                return Event.OTHER;
+            }
+        }
+    }
+
+    /**
+     * Read the first argument of the message decoded last, which has to be a string.
+     *
+     * @return The first argument, or empty if there is none
+     * @throws IllegalArgumentException If the message is not valid JSON
+     */
+    Optional<String> readFirstArgument() throws IllegalArgumentException {
+        if (argumentsPosition < 0 && !findArguments()) {
+            return Optional.empty();
+        }
+
+        position = argumentsPosition;
+        if (peek() != '[') {
+            return Optional.empty();
+        }
+        position++;
+        skipWhitespace();
+        if (peek() != '"') {
+            return Optional.empty();
+        }
+        return Optional.of(readString());
+    }
+
+    /**
+     * Read the resource usage carried by a stats event, the message decoded last.
+     * Wings sends it as a JSON object encoded in a string, of which only the usage figures are read.
+     *
+     * @return The resource usage, or empty if the message has no CPU usage
+     * @throws IllegalArgumentException If the message is not valid JSON
+     */
+    Optional<ResourceSample> readStats() throws IllegalArgumentException {
+        Optional<String> argument = readFirstArgument();
+        if (argument.isEmpty()) {
+            return Optional.empty();
+        }
+
+        text = argument.get();
+        position = 0;
+        argumentsPosition = -1;
+        skipWhitespace();
+
+        Stats stats = new Stats();
+        readObject((keyStart, keyEnd) -> {
+            if (regionEquals(keyStart, keyEnd, CPU_KEY)) {
+                stats.cpuAbsolute = readNumber();
+            } else if (regionEquals(keyStart, keyEnd, MEMORY_KEY)) {
+                stats.memoryBytes = (long) readNumber();
+            } else if (regionEquals(keyStart, keyEnd, NETWORK_KEY) && peek() == '{') {
+                readObject((networkKeyStart, networkKeyEnd) -> {
+                    if (regionEquals(networkKeyStart, networkKeyEnd, RX_KEY)) {
+                        stats.networkRxBytes = (long) readNumber();
+                    } else if (regionEquals(networkKeyStart, networkKeyEnd, TX_KEY)) {
+                        stats.networkTxBytes = (long) readNumber();
+                    } else {
+                        skipValue();
+                    }
+                });
+            } else {
+                skipValue();
+            }
+        });
+
+        if (Double.isNaN(stats.cpuAbsolute)) {
+            return Optional.empty();
+        }
+        return Optional.of(new ResourceSample(System.nanoTime(), stats.cpuAbsolute, stats.memoryBytes, stats.networkRxBytes, stats.networkTxBytes));
+    }
+
+    /**
+     * Read the members of the object at the current position, handing each of them to the reader which has to
+     * consume its value.
+     */
+    private void readObject(MemberReader reader) {
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            position++;
+            return;
+        }
+
+        do {
+            int keyStart = position + 1;
+            int keyEnd = skipString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+            reader.read(keyStart, keyEnd);
+        } while (skipSeparator());
+    }
+
+    private double readNumber() {
+        int start = position;
+        while (position < text.length() && isNumberPart(text.charAt(position))) {
+            position++;
+        }
+        if (start == position) {
+            throw malformed();
+        }
+
+        try {
+            return Double.parseDouble(text.subSequence(start, position).toString());
+        } catch (NumberFormatException e) {
+            throw malformed();
+        }
+    }
+
+    /**
+     * Look for the arguments in the part of the message after the event.
+     */
+    private boolean findArguments() {
+        while (skipSeparator()) {
+            int keyStart = position + 1;
+            int keyEnd = skipString();
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+
+            if (regionEquals(keyStart, keyEnd, ARGS_KEY)) {
+                argumentsPosition = position;
+                return true;
+            }
+            skipValue();
+        }
+        return false;
+    }
+
+    private Event readEvent() {
+        if (peek() != '"') {
+            skipValue();
+            return Event.OTHER;
+        }
+
+        int start = position + 1;
+        int end = skipString();
+        boolean escaped = false;
+        for (int i = start; i < end; i++) {
+            if (text.charAt(i) == '\\') {
+                escaped = true;
+                break;
+            }
+        }
+
+        if (escaped) {
+            // Never sent by Wings, but still valid JSON
+            int afterEvent = position;
+            position = start - 1;
+            String name = readString();
+            position = afterEvent;
+            for (Event event : Event.HANDLED) {
+                if (event.eventName.equals(name)) {
+                    return event;
+                }
+            }
+            return Event.OTHER;
+        }
+
+        for (Event event : Event.HANDLED) {
+            if (regionEquals(start, end, event.eventName)) {
+                return event;
+            }
+        }
+        return Event.OTHER;
+    }
+
+    /**
+     * Skip the comma between two members of the object.
+     *
+     * @return false if the end of the object was reached instead
+     */
+    private boolean skipSeparator() {
+        skipWhitespace();
+        char c = next();
+        if (c == '}') {
+            return false;
+        }
+        if (c != ',') {
+            throw malformed();
+        }
+        skipWhitespace();
+        return true;
+    }
+
+    /**
+     * Skip any value, nested objects and arrays included.
+     */
+    private void skipValue() {
+        int depth = 0;
+        do {
+            char c = peek();
+            switch (c) {
+                case '"' -> skipString();
+                case '{', '[' -> {
+                    depth++;
+                    position++;
+                }
+                case '}', ']' -> {
+                    depth--;
+                    position++;
+                }
+                case ',', ':' -> {
+                    if (depth == 0) {
+                        throw malformed();
+                    }
+                    position++;
+                }
+                default -> {
+                    // Numbers, literals and whitespace
+                    position++;
+                    while (position < text.length() && isLiteralPart(text.charAt(position))) {
+                        position++;
+                    }
+                }
+            }
+        } while (depth > 0);
+
+        if (depth < 0) {
+            throw malformed();
+        }
+    }
+
+    /**
+     * Skip the string starting at the current position.
+     *
+     * @return The position of its closing quote
+     */
+    private int skipString() {
+        expect('"');
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return position - 1;
+            }
+            if (c == '\\') {
+                next();
+            }
+        }
+    }
+
+    /**
+     * Read the string starting at the current position, decoding its escape sequences.
+     */
+    private String readString() {
+        expect('"');
+        StringBuilder builder = new StringBuilder();
+        while (true) {
+            char c = next();
+            if (c == '"') {
+                return builder.toString();
+            }
+            if (c != '\\') {
+                builder.append(c);
+                continue;
+            }
+
+            char escape = next();
+            switch (escape) {
+                case 'b' -> builder.append('\b');
+                case 'f' -> builder.append('\f');
+                case 'n' -> builder.append('\n');
+                case 'r' -> builder.append('\r');
+                case 't' -> builder.append('\t');
+                case 'u' -> {
+                    if (position + 4 > text.length()) {
+                        throw malformed();
+                    }
+                    int codePoint = 0;
+                    for (int i = 0; i < 4; i++) {
+                        int digit = Character.digit(next(), 16);
+                        if (digit < 0) {
+                            throw malformed();
+                        }
+                        codePoint = codePoint << 4 | digit;
+                    }
+                    builder.append((char) codePoint);
+                }
+                case '"', '\\', '/' -> builder.append(escape);
+                default -> throw malformed();
+            }
+        }
+    }
+
+    private boolean regionEquals(int start, int end, String expected) {
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = 0; i < expected.length(); i++) {
+            if (text.charAt(start + i) != expected.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void skipWhitespace() {
+        while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+            position++;
+        }
+    }
+
+    private static boolean isNumberPart(char c) {
+        return (c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E';
+    }
+
+    private static boolean isLiteralPart(char c) {
+        return c != ',' && c != ':' && c != '"' && c != '{' && c != '}' && c != '[' && c != ']';
+    }
+
+    private void expect(char expected) {
+        if (next() != expected) {
+            throw malformed();
+        }
+    }
+
+    private char peek() {
+        if (position >= text.length()) {
+            throw malformed();
+        }
+        return text.charAt(position);
+    }
+
+    private char next() {
+        char c = peek();
+        position++;
+        return c;
+    }
+
+    private IllegalArgumentException malformed() {
+        return new IllegalArgumentException("Malformed message at position " + position);
+    }
+
+    @FunctionalInterface
+    private interface MemberReader {
+        /**
+         * @param keyStart Position of the first character of the key
+         * @param keyEnd   Position of the closing quote of the key
+         */
+        void read(int keyStart, int keyEnd);
+    }
+
+    private static final class Stats {
+        private double cpuAbsolute = Double.NaN;
+        private long memoryBytes;
+        private long networkRxBytes;
+        private long networkTxBytes;
+    }
+}
@@ -0,0 +1,417 @@
+package fr.pickaria.pterodactylpoweraction.online;
+
+import com.google.gson.Gson;
+import fr.pickaria.pterodactylpoweraction.api.PterodactylClient;
+import fr.pickaria.pterodactylpoweraction.executor.PluginExecutors;
+import org.slf4j.Logger;
+
+import java.net.URI;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.List;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps one authenticated WebSocket open per Pterodactyl server and records the status events it pushes, so the
+ * state of a server can be read from memory instead of opening a new socket for every check.
+ * Sockets are reconnected with an exponential backoff when they are closed.
+ */
+public class PterodactylStatusStream {
+    private static final Duration MINIMUM_RECONNECT_DELAY = Duration.ofSeconds(1);
+    private static final Duration MAXIMUM_RECONNECT_DELAY = Duration.ofMinutes(1);
+    /**
+     * Longest message read from a socket, in characters. Wings only sends long messages for the console output.
+     */
+    private static final int MAXIMUM_MESSAGE_LENGTH = 64 * 1024;
+
+    private final Gson gson = new Gson();
+    private final Logger logger;
+    private final PterodactylClient client;
+    private final PluginExecutors executors;
+    private final PterodactylCredentialCache credentialCache;
+    private final Map<String, ServerStream> streams = new ConcurrentHashMap<>();
+    private volatile boolean closed = false;
+
+    public PterodactylStatusStream(Logger logger, PterodactylClient client, PluginExecutors executors) {
+        this.logger = logger;
+        this.client = client;
+        this.executors = executors;
+        this.credentialCache = new PterodactylCredentialCache(client);
+    }
+
+    /**
+     * Get the stream of the server, opening its socket if it is not connected yet.
+     *
+     * @param serverIdentifier The Pterodactyl identifier of the server
+     * @return The stream, whose status may not be known yet
+     */
+    public ServerStream subscribe(String serverIdentifier) {
+        ServerStream stream = streams.computeIfAbsent(serverIdentifier, ServerStream::new);
+        stream.connect();
+        return stream;
+    }
+
+    /**
+     * Record the console lines of the server matching the pattern, whether or not someone waits for them yet, so that a
+     * line printed before {@link ServerStream#awaitConsoleLine(Pattern)} is called is not missed.
+     * The socket is not opened by this method.
+     *
+     * @param serverIdentifier The Pterodactyl identifier of the server
+     * @param pattern          Pattern found in the line, such as the line printed once the world is loaded
+     */
+    public void watchConsole(String serverIdentifier, Pattern pattern) {
+        streams.computeIfAbsent(serverIdentifier, ServerStream::new).watchConsole(pattern);
+    }
+
+    /**
+     * Close the sockets of the servers that are not part of the configuration anymore.
+     *
+     * @param serverIdentifiers The identifiers of the servers to keep
+     */
+    public void retain(Set<String> serverIdentifiers) {
+        streams.entrySet().removeIf(entry -> {
+            if (serverIdentifiers.contains(entry.getKey())) {
+                return false;
+            }
+            entry.getValue().abort();
+            return true;
+        });
+    }
+
+    public void close() {
+        closed = true;
+        streams.values().forEach(ServerStream::abort);
+        streams.clear();
+    }
+
+    public class ServerStream {
+        private static final String RUNNING = "running";
+        private static final String OFFLINE = "offline";
+        private static final String STARTING = "starting";
+
+        private final String serverIdentifier;
+        private final AtomicBoolean connected = new AtomicBoolean(false);
+        private final ResourceWindow resources = new ResourceWindow();
+        private volatile boolean isSampling = false;
+        private final List<ConsoleWaiter> consoleWaiters = new CopyOnWriteArrayList<>();
+        /**
+         * Patterns looked for in the console output, by their source
+         */
+        private final Map<String, Pattern> consolePatterns = new ConcurrentHashMap<>();
+        /**
+         * Whether the socket saw the server boot, and so its console output, since it was opened
+         */
+        private boolean hasSeenBoot = false;
+        /**
+         * Sources of the patterns matched by the console output since the server booted
+         */
+        private final Set<String> matchedPatterns = new HashSet<>();
+        private volatile WebSocket webSocket;
+        private volatile String status;
+        private CompletableFuture<String> knownStatus = new CompletableFuture<>();
+        private CompletableFuture<Void> running = new CompletableFuture<>();
+        private CompletableFuture<Void> offline = new CompletableFuture<>();
+        private int failures = 0;
+
+        private ServerStream(String serverIdentifier) {
+            this.serverIdentifier = serverIdentifier;
+        }
+
+        /**
+         * @return The last status pushed by the panel, or empty if the socket is not connected
+         */
+        public Optional<String> getStatus() {
+            return Optional.ofNullable(status);
+        }
+
+        public boolean isRunning() {
+            return RUNNING.equalsIgnoreCase(status);
+        }
+
+        /**
+         * Get the resource usage of the server, recorded from the first call on.
+         * The stats are skipped as long as nobody asked for them.
+         *
+         * @return The resource usage of the current run of the server
+         */
+        public ResourceWindow getResources() {
+            isSampling = true;
+            return resources;
+        }
+
+        /**
+         * Wait for the server to print a line matching the pattern in its console.
+         * If the server was already running when the socket was opened, the line may have been printed before, so the
+         * future completes right away.
+         * Cancelling the returned future stops the wait.
+         *
+         * @param pattern Pattern found in the line, such as the line printed once the world is loaded
+         * @return A future completing once the line is printed during the current run of the server
+         */
+        public synchronized CompletableFuture<Void> awaitConsoleLine(Pattern pattern) {
+            watchConsole(pattern);
+            if (matchedPatterns.contains(pattern.pattern()) || (RUNNING.equalsIgnoreCase(status) && !hasSeenBoot)) {
+                return CompletableFuture.completedFuture(null);
+            }
+
+            ConsoleWaiter waiter = new ConsoleWaiter(pattern, new CompletableFuture<>());
+            consoleWaiters.add(waiter);
+            waiter.future().whenComplete((result, throwable) -> consoleWaiters.remove(waiter));
+            return waiter.future();
+        }
+
+        private void watchConsole(Pattern pattern) {
+            consolePatterns.putIfAbsent(pattern.pattern(), pattern);
+        }
+
+        /**
+         * @return A future completing with the current status as soon as it is known
+         */
+        public synchronized CompletableFuture<String> awaitStatus() {
+            return knownStatus.copy();
+        }
+
+        /**
+         * @return A future completing once the panel reports the server as running
+         */
+        public synchronized CompletableFuture<Void> awaitRunning() {
+            return running.copy();
+        }
+
+        /**
+         * @return A future completing once the panel reports the server as offline
+         */
+        public synchronized CompletableFuture<Void> awaitOffline() {
+            return offline.copy();
+        }
+
+        private synchronized void setStatus(String status) {
+            this.status = status;
+
+            if (STARTING.equalsIgnoreCase(status) || OFFLINE.equalsIgnoreCase(status)) {
+                // The samples and the console output of the previous run do not tell anything about the next one
+                resources.clear();
+                hasSeenBoot = true;
+                matchedPatterns.clear();
+            } else if (RUNNING.equalsIgnoreCase(status) && !hasSeenBoot) {
+                // The socket was opened after the boot, the line will not be printed again
+                consoleWaiters.forEach(waiter -> waiter.future().complete(null));
+            }
+
+            if (!knownStatus.complete(status)) {
+                knownStatus = CompletableFuture.completedFuture(status);
+            }
+
+            running = updateWaiter(running, RUNNING.equalsIgnoreCase(status));
+            offline = updateWaiter(offline, OFFLINE.equalsIgnoreCase(status));
+        }
+
+        /**
+         * Complete the waiter if the status is reached, or replace it if the status was left.
+         */
+        private CompletableFuture<Void> updateWaiter(CompletableFuture<Void> waiter, boolean reached) {
+            if (reached) {
+                waiter.complete(null);
+                return waiter;
+            }
+            return waiter.isDone() ? new CompletableFuture<>() : waiter;
+        }
+
+        private synchronized void clearStatus() {
+            this.status = null;
+            this.hasSeenBoot = false;
+            // The server may have restarted while the socket was closed
+            matchedPatterns.clear();
+
+            if (knownStatus.isDone()) {
+                knownStatus = new CompletableFuture<>();
+            }
+            running = updateWaiter(running, false);
+            offline = updateWaiter(offline, false);
+        }
+
+        private void connect() {
+            if (closed || !connected.compareAndSet(false, true)) {
+                return;
+            }
+
+            CompletableFuture<WebSocket> connection;
+            try {
+                connection = credentialCache.get(serverIdentifier).thenCompose(this::openSocket);
+            } catch (RuntimeException exception) {
+                connection = CompletableFuture.failedFuture(exception);
+            }
+
+            connection.whenComplete((ws, throwable) -> {
+                if (throwable != null) {
+                    if (failures == 0) {
+                        logger.warn("Could not open the status socket of the Pterodactyl server '{}'", serverIdentifier, throwable);
+                    }
+                    // The token may have been revoked, do not reuse it for the next attempt
+                    credentialCache.invalidate(serverIdentifier);
+                    disconnected();
+                } else if (closed || streams.get(serverIdentifier) != this) {
+                    // The stream was closed while the socket was opening
+                    ws.abort();
+                } else {
+                    webSocket = ws;
+                }
+            });
+        }
+
+        private CompletableFuture<WebSocket> openSocket(PterodactylCredentialCache.Credentials credentials) {
+            return client.newWebSocketBuilder()
+                    .buildAsync(URI.create(credentials.socket()), new Listener(credentials.token()));
+        }
+
+        private void handleText(WebSocket webSocket, PterodactylEventDecoder decoder, CharSequence text) {
+            try {
+                switch (decoder.decode(text)) {
+                    case AUTH_SUCCESS -> {
+                        failures = 0;
+                        sendJson(webSocket, new PterodactylWebSocketPayload("send stats"));
+                    }
+                    case STATUS -> decoder.readFirstArgument().ifPresent(this::setStatus);
+                    case STATS -> {
+                        if (isSampling) {
+                            decoder.readStats().ifPresent(resources::add);
+                        }
+                    }
+                    case CONSOLE_OUTPUT -> {
+                        if (!consolePatterns.isEmpty()) {
+                            decoder.readFirstArgument().ifPresent(this::handleConsoleLine);
+                        }
+                    }
+                    case TOKEN_EXPIRING, TOKEN_EXPIRED -> reauthenticate(webSocket);
+                    case JWT_ERROR -> {
+                        // The token was rejected, open a new socket with fresh credentials
+                        credentialCache.invalidate(serverIdentifier);
+                        webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "reconnecting");
+                    }
+                    case OTHER -> {
+                    }
+                }
+            } catch (IllegalArgumentException exception) {
+                logger.debug("Ignoring malformed message from the Pterodactyl server '{}'", serverIdentifier, exception);
+            }
+        }
+
+        private synchronized void handleConsoleLine(String line) {
+            // Recorded even without a waiter, the line may be printed before anyone waits for it
+            for (Pattern pattern : consolePatterns.values()) {
+                if (pattern.matcher(line).find()) {
+                    matchedPatterns.add(pattern.pattern());
+                }
+            }
+            for (ConsoleWaiter waiter : consoleWaiters) {
+                if (matchedPatterns.contains(waiter.pattern().pattern())) {
+                    waiter.future().complete(null);
+                }
+            }
+        }
+
+        /**
+         * Send a new token on the live socket so that it keeps receiving events without reconnecting.
+         */
+        private void reauthenticate(WebSocket webSocket) {
+            credentialCache.refresh(serverIdentifier).whenComplete((credentials, throwable) -> {
+                if (throwable == null) {
+                    sendJson(webSocket, new PterodactylWebSocketPayload("auth", List.of(credentials.token())));
+                } else {
+                    logger.debug("Could not refresh the token of the Pterodactyl server '{}'", serverIdentifier, throwable);
+                    webSocket.sendClose(WebSocket.NORMAL_CLOSURE, "reconnecting");
+                }
+            });
+        }
+
+        private void disconnected() {
+            webSocket = null;
+            clearStatus();
+            connected.set(false);
+            scheduleReconnect();
+        }
+
+        private void scheduleReconnect() {
+            if (closed || streams.get(serverIdentifier) != this) {
+                return;
+            }
+
+            long delay = Math.min(
+                    MAXIMUM_RECONNECT_DELAY.toMillis(),
+                    MINIMUM_RECONNECT_DELAY.toMillis() << Math.min(failures, 16)
+            );
+            failures++;
+            // Add some jitter so that all the sockets do not reconnect at once after a panel outage
+            delay += ThreadLocalRandom.current().nextLong(delay / 4 + 1);
+
+            executors.delayed(delay).execute(this::connect);
+        }
+
+        private void abort() {
+            WebSocket ws = webSocket;
+            if (ws != null) {
+                ws.abort();
+            }
+        }
+
+        private void sendJson(WebSocket webSocket, PterodactylWebSocketPayload payload) {
+            webSocket.sendText(gson.toJson(payload), true);
+        }
+
+        /**
+         * Authenticates the socket once it is open, then forwards the events to the stream.
+         * The socket calls its listener for one message at a time, so the buffers are reused for every message.
+         */
+        private class Listener implements WebSocket.Listener {
+            private final String token;
+            private final WebSocketTextAssembler assembler = new WebSocketTextAssembler(MAXIMUM_MESSAGE_LENGTH);
+            private final PterodactylEventDecoder decoder = new PterodactylEventDecoder();
+
+            private Listener(String token) {
+                this.token = token;
+            }
+
+            @Override
+            public void onOpen(WebSocket webSocket) {
+                webSocket.request(1);
+                sendJson(webSocket, new PterodactylWebSocketPayload("auth", List.of(token)));
+            }
+
+            @Override
+            public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+                CharSequence text = assembler.append(data, last);
+                if (text != null) {
+                    handleText(webSocket, decoder, text);
+                }
+
+                webSocket.request(1);
+                return null;
+            }
+
+            @Override
+            public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+                disconnected();
+                return null;
+            }
+
+            @Override
+            public void onError(WebSocket webSocket, Throwable error) {
+                logger.debug("Status socket of the Pterodactyl server '{}' failed", serverIdentifier, error);
+                disconnected();
+            }
+        }
+
+        private record ConsoleWaiter(Pattern pattern, CompletableFuture<Void> future) {
+        }
+    }
+}
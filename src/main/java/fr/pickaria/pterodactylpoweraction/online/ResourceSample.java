@@ -0,0 +1,13 @@
+package fr.pickaria.pterodactylpoweraction.online;
+
+/**
+ * Resource usage of a server, as sent every second by Wings while the server is running.
+ *
+ * @param sampledAt      When the sample was received, from {@link System#nanoTime()}
+ * @param cpuAbsolute    CPU usage in percent of a single core, above 100 when several cores are used
+ * @param memoryBytes    Memory used by the server
+ * @param networkRxBytes Bytes received by the server since it started
+ * @param networkTxBytes Bytes sent by the server since it started
+ */
+public record ResourceSample(long sampledAt, double cpuAbsolute, long memoryBytes, long networkRxBytes, long networkTxBytes) {
+}
@@ -0,0 +1,123 @@
+package fr.pickaria.pterodactylpoweraction.online;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.OptionalDouble;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Rolling window of the resource usage of a server, holding the samples of the last few minutes.
+ * The window is emptied when the server boots again, so that it only describes the current run of the server.
+ */
+public class ResourceWindow {
+    /**
+     * How long samples are kept, which is also the longest period the usage can be checked over.
+     */
+    public static final Duration RETENTION = Duration.ofMinutes(10);
+    /**
+     * Wings sends a sample every second while the server runs, older samples mean the server or its socket is gone.
+     */
+    private static final Duration STALE_AFTER = Duration.ofSeconds(10);
+
+    private final Deque<ResourceSample> samples = new ArrayDeque<>();
+    private final List<QuietWaiter> waiters = new ArrayList<>();
+
+    synchronized void add(ResourceSample sample) {
+        samples.addLast(sample);
+        while (sample.sampledAt() - samples.getFirst().sampledAt() > RETENTION.toNanos()) {
+            samples.removeFirst();
+        }
+
+        Iterator<QuietWaiter> iterator = waiters.iterator();
+        while (iterator.hasNext()) {
+            QuietWaiter waiter = iterator.next();
+            if (waiter.future().isDone()) {
+                iterator.remove();
+            } else if (isQuiet(waiter.cpuThreshold(), waiter.duration())) {
+                iterator.remove();
+                waiter.future().complete(null);
+            }
+        }
+    }
+
+    synchronized void clear() {
+        samples.clear();
+    }
+
+    /**
+     * @return The last sample received, or empty if the window holds no recent sample
+     */
+    public synchronized Optional<ResourceSample> getLatest() {
+        return Optional.ofNullable(samples.peekLast()).filter(this::isFresh);
+    }
+
+    /**
+     * @return The average CPU usage over the period, or empty if no recent sample was received
+     */
+    public synchronized OptionalDouble getAverageCpu(Duration period) {
+        if (getLatest().isEmpty()) {
+            return OptionalDouble.empty();
+        }
+
+        long since = samples.getLast().sampledAt() - period.toNanos();
+        return samples.stream()
+                .filter(sample -> sample.sampledAt() >= since)
+                .mapToDouble(ResourceSample::cpuAbsolute)
+                .average();
+    }
+
+    /**
+     * Tell whether the CPU usage stayed below the threshold for the whole duration.
+     * The window must hold samples covering the duration, and the last one must be recent.
+     *
+     * @param cpuThreshold CPU usage in percent of a single core
+     * @param duration     Period the usage must have stayed below the threshold, at most {@link #RETENTION}
+     */
+    public synchronized boolean isQuiet(double cpuThreshold, Duration duration) {
+        ResourceSample latest = samples.peekLast();
+        if (latest == null || !isFresh(latest)) {
+            return false;
+        }
+
+        Iterator<ResourceSample> iterator = samples.descendingIterator();
+        while (iterator.hasNext()) {
+            ResourceSample sample = iterator.next();
+            if (sample.cpuAbsolute() >= cpuThreshold) {
+                return false;
+            }
+            if (latest.sampledAt() - sample.sampledAt() >= duration.toNanos()) {
+                return true;
+            }
+        }
+        // The samples do not go back far enough yet
+        return false;
+    }
+
+    /**
+     * Wait for the CPU usage to stay below the threshold for the duration.
+     * Cancelling the returned future stops the wait.
+     *
+     * @return A future completing once {@link #isQuiet} holds
+     */
+    public synchronized CompletableFuture<Void> awaitQuiet(double cpuThreshold, Duration duration) {
+        if (isQuiet(cpuThreshold, duration)) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        waiters.add(new QuietWaiter(cpuThreshold, duration, future));
+        return future;
+    }
+
+    private boolean isFresh(ResourceSample sample) {
+        return System.nanoTime() - sample.sampledAt() <= STALE_AFTER.toNanos();
+    }
+
+    private record QuietWaiter(double cpuThreshold, Duration duration, CompletableFuture<Void> future) {
+    }
+}
@@ -0,0 +1,70 @@
+package fr.pickaria.pterodactylpoweraction.online;
+
+/**
+ * Joins the fragments of the text messages received on a WebSocket, reusing the same buffer for every message.
+ * A message received in a single fragment, which is the usual case, is handed over without being copied.
+ * Messages longer than the limit are dropped instead of growing the buffer without bounds.
+ */
+class WebSocketTextAssembler {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int maximumLength;
+    private StringBuilder buffer = new StringBuilder(INITIAL_CAPACITY);
+    private boolean overflowed = false;
+    private boolean completed = false;
+
+    /**
+     * @param maximumLength Maximum length of a message, in characters
+     */
+    WebSocketTextAssembler(int maximumLength) {
+        this.maximumLength = maximumLength;
+    }
+
+    /**
+     * Add a fragment of the current message.
+     * The returned message is only valid until the next call, as its buffer is reused.
+     *
+     * @param fragment The fragment received
+     * @param last     Whether it is the last fragment of the message
+     * @return The complete message once its last fragment is received, or null if more fragments are expected or the
+     * message was dropped
+     */
+    CharSequence append(CharSequence fragment, boolean last) {
+        if (completed) {
+            completed = false;
+            clear();
+        }
+
+        if (last && buffer.isEmpty() && !overflowed) {
+            return fragment.length() <= maximumLength ? fragment : null;
+        }
+
+        if (!overflowed) {
+            if (buffer.length() + fragment.length() > maximumLength) {
+                overflowed = true;
+                clear();
+            } else {
+                buffer.append(fragment);
+            }
+        }
+
+        if (!last) {
+            return null;
+        }
+        if (overflowed) {
+            overflowed = false;
+            return null;
+        }
+        completed = true;
+        return buffer;
+    }
+
+    private void clear() {
+        if (buffer.capacity() > INITIAL_CAPACITY * 16) {
+            // Do not keep a large buffer around because of a single long message
+            buffer = new StringBuilder(INITIAL_CAPACITY);
+        } else {
+            buffer.setLength(0);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package fr.pickaria.pterodactylpoweraction.online;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PterodactylEventDecoderTest {
+    private final PterodactylEventDecoder decoder = new PterodactylEventDecoder();
+
+    @Test
+    void decodesStatus() {
+        assertEquals(PterodactylEventDecoder.Event.STATUS, decoder.decode("{\"event\":\"status\",\"args\":[\"running\"]}"));
+        assertEquals(Optional.of("running"), decoder.readFirstArgument());
+    }
+
+    @Test
+    void decodesArgumentsBeforeEvent() {
+        assertEquals(PterodactylEventDecoder.Event.STATUS, decoder.decode("{ \"args\" : [ \"offline\" ] , \"event\" : \"status\" }"));
+        assertEquals(Optional.of("offline"), decoder.readFirstArgument());
+    }
+
+    @Test
+    void decodesEscapedEventName() {
+        assertEquals(PterodactylEventDecoder.Event.STATUS, decoder.decode("{\"event\":\"st\\u0061tus\",\"args\":[\"starting\"]}"));
+        assertEquals(Optional.of("starting"), decoder.readFirstArgument());
+        assertEquals(PterodactylEventDecoder.Event.CONSOLE_OUTPUT, decoder.decode("{\"event\":\"console\\u0020output\",\"args\":[\"Done\"]}"));
+        assertEquals(PterodactylEventDecoder.Event.OTHER, decoder.decode("{\"event\":\"st\\\"atus\",\"args\":[\"starting\"]}"));
+    }
+
+    @Test
+    void decodesUnhandledEvent() {
+        assertEquals(PterodactylEventDecoder.Event.OTHER, decoder.decode("{\"event\":\"install output\",\"args\":[\"Installing\"]}"));
+        assertEquals(PterodactylEventDecoder.Event.OTHER, decoder.decode("{\"args\":[\"running\"]}"));
+        assertEquals(PterodactylEventDecoder.Event.OTHER, decoder.decode("{}"));
+    }
+
+    @Test
+    void readsEscapedArgument() {
+        decoder.decode("{\"event\":\"console output\",\"args\":[\"\\u0028Done\\u0029 in \\\"4s\\\"\\n\\u00e9\\/\"]}");
+        assertEquals(Optional.of("(Done) in \"4s\"\n\u00e9/"), decoder.readFirstArgument());
+    }
+
+    @Test
+    void readsNoArgument() {
+        decoder.decode("{\"event\":\"auth success\"}");
+        assertEquals(Optional.empty(), decoder.readFirstArgument());
+        decoder.decode("{\"event\":\"status\",\"args\":[]}");
+        assertEquals(Optional.empty(), decoder.readFirstArgument());
+    }
+
+    @Test
+    void readsNestedStats() {
+        String stats = "{\\\"memory_bytes\\\":2147483648,\\\"cpu_absolute\\\":12.5,"
+                + "\\\"disk\\\":{\\\"mounts\\\":[{\\\"rx_bytes\\\":1},[2,3]],\\\"cpu_absolute\\\":99},"
+                + "\\\"network\\\":{\\\"rx_bytes\\\":123456,\\\"other\\\":{\\\"tx_bytes\\\":1},\\\"tx_bytes\\\":654321},"
+                + "\\\"state\\\":\\\"running\\\",\\\"uptime\\\":3600000}";
+        assertEquals(PterodactylEventDecoder.Event.STATS, decoder.decode("{\"event\":\"stats\",\"args\":[\"" + stats + "\"]}"));
+
+        ResourceSample sample = decoder.readStats().orElseThrow();
+        assertEquals(12.5, sample.cpuAbsolute());
+        assertEquals(2147483648L, sample.memoryBytes());
+        assertEquals(123456, sample.networkRxBytes());
+        assertEquals(654321, sample.networkTxBytes());
+    }
+
+    @Test
+    void readsStatsWithoutCpu() {
+        decoder.decode("{\"event\":\"stats\",\"args\":[\"{\\\"memory_bytes\\\":1024}\"]}");
+        assertTrue(decoder.readStats().isEmpty());
+    }
+
+    @Test
+    void rejectsTruncatedMessage() {
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode(""));
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode("{\"event\":\"sta"));
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode("{\"args\":[\"running\"]"));
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode("{\"args\":[\"running\"],"));
+
+        assertEquals(PterodactylEventDecoder.Event.STATUS, decoder.decode("{\"event\":\"status\",\"args\":[\"runn"));
+        assertThrows(IllegalArgumentException.class, decoder::readFirstArgument);
+
+        decoder.decode("{\"event\":\"console output\",\"args\":[\"\\u00\"]}");
+        assertThrows(IllegalArgumentException.class, decoder::readFirstArgument);
+
+        decoder.decode("{\"event\":\"stats\",\"args\":[\"{\\\"cpu_absolute\\\":12.5,\\\"network\\\":{\"]}");
+        assertThrows(IllegalArgumentException.class, decoder::readStats);
+    }
+
+    @Test
+    void rejectsNonObject() {
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode("[\"status\"]"));
+        assertThrows(IllegalArgumentException.class, () -> decoder.decode("{\"args\":[] \"event\":\"status\"}"));
+    }
+}
@@ -0,0 +1,52 @@
+package fr.pickaria.pterodactylpoweraction.online;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class WebSocketTextAssemblerTest {
+    private static final int MAXIMUM_LENGTH = 64 * 1024;
+
+    private final WebSocketTextAssembler assembler = new WebSocketTextAssembler(MAXIMUM_LENGTH);
+
+    @Test
+    void returnsSingleFragmentAsIs() {
+        String message = "{\"event\":\"status\",\"args\":[\"running\"]}";
+        assertSame(message, assembler.append(message, true));
+    }
+
+    @Test
+    void joinsFragments() {
+        assertNull(assembler.append("{\"event\":", false));
+        assertNull(assembler.append("\"status\",", false));
+        assertEquals("{\"event\":\"status\",\"args\":[\"running\"]}", assembler.append("\"args\":[\"running\"]}", true).toString());
+
+        // The buffer is reused for the next message
+        assertNull(assembler.append("{\"event\":", false));
+        assertEquals("{\"event\":\"stats\"}", assembler.append("\"stats\"}", true).toString());
+        assertEquals("{}", assembler.append("{}", true).toString());
+    }
+
+    @Test
+    void keepsMessageAtLimit() {
+        assertNull(assembler.append("a".repeat(MAXIMUM_LENGTH - 1), false));
+        assertEquals(MAXIMUM_LENGTH, assembler.append("b", true).length());
+        assertEquals(MAXIMUM_LENGTH, assembler.append("c".repeat(MAXIMUM_LENGTH), true).length());
+    }
+
+    @Test
+    void dropsMessageOverLimit() {
+        assertNull(assembler.append("a".repeat(MAXIMUM_LENGTH), false));
+        assertNull(assembler.append("b", false));
+        assertNull(assembler.append("c".repeat(MAXIMUM_LENGTH), false));
+        assertNull(assembler.append("d", true));
+
+        assertNull(assembler.append("e".repeat(MAXIMUM_LENGTH + 1), true));
+
+        // The next message is assembled again
+        assertNull(assembler.append("{\"event\":", false));
+        assertEquals("{\"event\":\"status\"}", assembler.append("\"status\"}", true).toString());
+    }
+}